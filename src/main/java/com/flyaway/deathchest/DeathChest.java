@@ -4,10 +4,12 @@ import com.flyaway.deathchest.managers.ChestManager;
 import com.flyaway.deathchest.managers.ConfigManager;
 import com.flyaway.deathchest.managers.HologramManager;
 import com.flyaway.deathchest.listeners.ChestInteractionListener;
+import com.flyaway.deathchest.listeners.ChunkListener;
 import com.flyaway.deathchest.listeners.DeathListener;
 import com.flyaway.deathchest.managers.MessageManager;
+import com.flyaway.deathchest.scheduler.TickBudgetScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.Objects;
 
@@ -16,28 +18,32 @@ public class DeathChest extends JavaPlugin {
     private static DeathChest instance;
     private ConfigManager configManager;
     private ChestManager chestManager;
-    private BukkitRunnable scheduledTask;
+    private ScheduledTask scheduledTask;
     private HologramManager hologramManager;
+    private TickBudgetScheduler workScheduler;
 
     @Override
     public void onEnable() {
         instance = this;
 
         this.configManager = new ConfigManager(this);
+        configManager.loadConfig();
+
+        this.workScheduler = new TickBudgetScheduler(this, configManager.getTickBudgetMillis());
         this.chestManager = new ChestManager(this);
         this.hologramManager = new HologramManager(this);
 
-        configManager.loadConfig();
-
         MessageManager.init(this);
 
         getServer().getPluginManager().registerEvents(new DeathListener(this), this);
         getServer().getPluginManager().registerEvents(new ChestInteractionListener(this), this);
+        getServer().getPluginManager().registerEvents(new ChunkListener(this), this);
 
         Objects.requireNonNull(getCommand("deathchest")).setExecutor(new DeathChestCommand(this));
 
         chestManager.loadChests();
 
+        workScheduler.start();
         runScheduledTask();
 
         getLogger().info("DeathChest был включен!");
@@ -50,17 +56,15 @@ public class DeathChest extends JavaPlugin {
         }
 
         chestManager.disableChests();
+        workScheduler.shutdown();
+        hologramManager.shutdown();
+        chestManager.shutdown();
         getLogger().info("DeathChest был выключен!");
     }
 
     private void runScheduledTask() {
-        this.scheduledTask = new BukkitRunnable() {
-            @Override
-            public void run() {
-                chestManager.runScheduledTasks();
-            }
-        };
-        this.scheduledTask.runTaskTimer(this, 6000L, 6000L); // 5 минут
+        this.scheduledTask = getServer().getGlobalRegionScheduler()
+                .runAtFixedRate(this, task -> chestManager.runScheduledTasks(), 20L, 20L); // 1 секунда
     }
 
     public void reloadConfiguration() {
@@ -69,6 +73,7 @@ public class DeathChest extends JavaPlugin {
         }
 
         configManager.reloadConfig();
+        workScheduler.setBudgetMillis(configManager.getTickBudgetMillis());
         MessageManager.init(this);
         chestManager.reloadChests();
         hologramManager.reload();
@@ -93,4 +98,8 @@ public class DeathChest extends JavaPlugin {
     public HologramManager getHologramManager() {
         return hologramManager;
     }
+
+    public TickBudgetScheduler getWorkScheduler() {
+        return workScheduler;
+    }
 }
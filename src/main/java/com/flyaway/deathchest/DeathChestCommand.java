@@ -4,7 +4,7 @@ import com.flyaway.deathchest.managers.ChestManager;
 import com.flyaway.deathchest.managers.ConfigManager;
 import com.flyaway.deathchest.managers.MessageManager;
 import net.kyori.adventure.text.Component;
-import org.bukkit.Location;
+import net.kyori.adventure.text.JoinConfiguration;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -19,6 +19,8 @@ import java.util.Map;
 
 public class DeathChestCommand implements CommandExecutor, TabCompleter {
 
+    private static final int LIST_PAGE_SIZE = 10;
+
     private final DeathChest plugin;
     private final ConfigManager configManager;
     private final ChestManager chestManager;
@@ -50,7 +52,7 @@ public class DeathChestCommand implements CommandExecutor, TabCompleter {
 
         switch (args[0].toLowerCase()) {
             case "list":
-                listChests(player);
+                listChests(player, args);
                 break;
 
             case "reload":
@@ -68,7 +70,7 @@ public class DeathChestCommand implements CommandExecutor, TabCompleter {
             case "version":
                 String version = plugin.getPluginMeta().getVersion();
                 player.sendMessage(MessageManager.buildMessage("version",
-                        "v" + version, Map.of("version", version)));
+                        "v{version}", Map.of("version", version)));
                 break;
 
             default:
@@ -83,63 +85,64 @@ public class DeathChestCommand implements CommandExecutor, TabCompleter {
         player.sendMessage(MessageManager.buildRawMessage("help", "<red>help-msg not found", null));
     }
 
-    private void listChests(Player player) {
-        Map<Location, ChestManager.DeathChestData> chests = chestManager.getDeathChests();
-        List<Component> playerChests = new ArrayList<>();
+    private void listChests(Player player, String[] args) {
+        List<ChestManager.ChestSummary> chests = chestManager.getOwnerChests(player.getUniqueId());
 
-        for (Map.Entry<Location, ChestManager.DeathChestData> entry : chests.entrySet()) {
-            Location location = entry.getKey();
-            ChestManager.DeathChestData chest = entry.getValue();
+        if (chests.isEmpty()) {
+            player.sendMessage(MessageManager.buildMessage("no-chests", "<green>У вас нет активных сундуков смерти"));
+            return;
+        }
 
-            if (chest.getOwner().equals(player.getUniqueId())) {
-                String world = location.getWorld().getName();
-                String x = String.valueOf(location.getBlockX());
-                String y = String.valueOf(location.getBlockY());
-                String z = String.valueOf(location.getBlockZ());
+        int page = 1;
+        if (args.length > 1) {
+            try {
+                page = Integer.parseInt(args[1]);
+            } catch (NumberFormatException ignored) {
+            }
+        }
 
-                Duration duration = Duration.between(
-                        Instant.ofEpochMilli(chest.getCreationTime()),
-                        Instant.now()
-                );
+        int pages = (chests.size() + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE;
+        int currentPage = Math.max(1, Math.min(page, pages));
+        int from = (currentPage - 1) * LIST_PAGE_SIZE;
+        List<ChestManager.ChestSummary> pageChests = List.copyOf(
+                chests.subList(from, Math.min(from + LIST_PAGE_SIZE, chests.size())));
 
-                String timeAgo = formatDuration(duration);
+        // Разбор MiniMessage и сборка компонентов не занимают основной поток
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            List<Component> lines = new ArrayList<>();
+            lines.add(MessageManager.buildRawMessage("list-header",
+                    "<gradient:gold:white>=== Ваши сундуки смерти ===</gradient>", null));
 
-                playerChests.add(MessageManager.buildRawMessage("list-format",
-                        "<red>list-format not found", Map.of(
-                                "world", world, "x", x, "y", y, "z", z, "time", timeAgo)));
+            for (int i = 0; i < pageChests.size(); i++) {
+                ChestManager.ChestSummary chest = pageChests.get(i);
+                int number = from + i + 1;
+                lines.add(MessageManager.buildRawMessage("list-numbered",
+                        "<white>{number}. ", Map.of("number", String.valueOf(number))
+                ).append(formatChest(chest.world(), chest.x(), chest.y(), chest.z(), chest.creationTime())));
             }
-        }
 
-        if (playerChests.isEmpty()) {
-            player.sendMessage(MessageManager.buildMessage("no-chests", "<green>У вас нет активных сундуков смерти"));
-        } else {
-            player.sendMessage(MessageManager.buildRawMessage("list-header",
-                    "<gradient:gold:white>=== Ваши сундуки смерти ===</gradient>", null));
-            for (int i = 0; i < playerChests.size(); i++) {
-                player.sendMessage(MessageManager.buildRawMessage("list-numbered",
-                        "<white>" + (i + 1) + ". ", Map.of("number", String.valueOf(i + 1))
-                ).append(playerChests.get(i)));
+            if (pages > 1) {
+                lines.add(MessageManager.buildRawMessage("list-page",
+                        "<gray>Страница {page} из {pages}", Map.of(
+                                "page", String.valueOf(currentPage), "pages", String.valueOf(pages))));
             }
-        }
+
+            player.sendMessage(Component.join(JoinConfiguration.newlines(), lines));
+        });
     }
 
-    private String formatDuration(Duration duration) {
-        long days = duration.toDays();
-        long hours = duration.toHours() % 24;
-        long minutes = duration.toMinutes() % 60;
-
-        if (days > 0) {
-            return String.format("%d %s, %d %s",
-                    days, configManager.getTimeAgo("days"),
-                    hours, configManager.getTimeAgo("hours"));
-        } else if (hours > 0) {
-            return String.format("%d %s, %d %s",
-                    hours, configManager.getTimeAgo("hours"),
-                    minutes, configManager.getTimeAgo("minutes"));
-        } else {
-            return String.format("%d %s",
-                    minutes, configManager.getTimeAgo("minutes"));
-        }
+    private Component formatChest(String world, int x, int y, int z, long creationTime) {
+        Duration duration = Duration.between(
+                Instant.ofEpochMilli(creationTime),
+                Instant.now()
+        );
+
+        String timeAgo = MessageManager.formatDuration(duration);
+
+        return MessageManager.buildRawMessage("list-format",
+                "<red>list-format not found", Map.of(
+                        "world", world, "x", String.valueOf(x), "y", String.valueOf(y), "z", String.valueOf(z),
+                        "time", timeAgo));
     }
 
     @Override
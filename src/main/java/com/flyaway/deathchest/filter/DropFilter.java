@@ -0,0 +1,110 @@
+package com.flyaway.deathchest.filter;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Решает, куда попадает каждый выпавший при смерти предмет.
+ * Правила разбираются один раз при загрузке конфигурации: материалы — в EnumSet,
+ * зачарования и ключи PersistentDataContainer — в готовые объекты.
+ * Сначала проверяются правила удаления, затем правила оставления на земле.
+ */
+public final class DropFilter {
+
+    public enum Route {
+        CHEST, GROUND, DELETE
+    }
+
+    public static final DropFilter EMPTY = new DropFilter(Matcher.EMPTY, Matcher.EMPTY);
+
+    private final Matcher delete;
+    private final Matcher ground;
+
+    private DropFilter(Matcher delete, Matcher ground) {
+        this.delete = delete;
+        this.ground = ground;
+    }
+
+    public static DropFilter compile(ConfigurationSection section, Logger logger) {
+        if (section == null) return EMPTY;
+
+        Matcher delete = Matcher.compile(section.getConfigurationSection("delete"), logger);
+        Matcher ground = Matcher.compile(section.getConfigurationSection("ground"), logger);
+        return delete.isEmpty() && ground.isEmpty() ? EMPTY : new DropFilter(delete, ground);
+    }
+
+    public Route route(ItemStack item) {
+        if (delete.matches(item)) return Route.DELETE;
+        if (ground.matches(item)) return Route.GROUND;
+        return Route.CHEST;
+    }
+
+    private record Matcher(Set<Material> materials, Enchantment[] enchantments, NamespacedKey[] keys) {
+
+        private static final Matcher EMPTY = new Matcher(EnumSet.noneOf(Material.class), new Enchantment[0], new NamespacedKey[0]);
+
+        private static Matcher compile(ConfigurationSection section, Logger logger) {
+            if (section == null) return EMPTY;
+
+            Set<Material> materials = EnumSet.noneOf(Material.class);
+            for (String name : section.getStringList("materials")) {
+                Material material = Material.matchMaterial(name);
+                if (material == null) {
+                    logger.warning("Неизвестный материал в drop-filter: " + name);
+                } else {
+                    materials.add(material);
+                }
+            }
+
+            List<Enchantment> enchantments = new ArrayList<>();
+            for (String name : section.getStringList("enchantments")) {
+                NamespacedKey key = NamespacedKey.fromString(name.toLowerCase());
+                Enchantment enchantment = key == null ? null : Registry.ENCHANTMENT.get(key);
+                if (enchantment == null) {
+                    logger.warning("Неизвестное зачарование в drop-filter: " + name);
+                } else {
+                    enchantments.add(enchantment);
+                }
+            }
+
+            List<NamespacedKey> keys = new ArrayList<>();
+            for (String name : section.getStringList("pdc-keys")) {
+                NamespacedKey key = NamespacedKey.fromString(name.toLowerCase());
+                if (key == null) {
+                    logger.warning("Некорректный ключ в drop-filter: " + name);
+                } else {
+                    keys.add(key);
+                }
+            }
+
+            return new Matcher(materials, enchantments.toArray(new Enchantment[0]), keys.toArray(new NamespacedKey[0]));
+        }
+
+        private boolean isEmpty() {
+            return materials.isEmpty() && enchantments.length == 0 && keys.length == 0;
+        }
+
+        private boolean matches(ItemStack item) {
+            if (materials.contains(item.getType())) return true;
+            if ((enchantments.length == 0 && keys.length == 0) || !item.hasItemMeta()) return false;
+
+            for (Enchantment enchantment : enchantments) {
+                if (item.containsEnchantment(enchantment)) return true;
+            }
+            for (NamespacedKey key : keys) {
+                if (item.getPersistentDataContainer().has(key)) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.flyaway.deathchest.hologram;
+
+import eu.decentsoftware.holograms.api.DHAPI;
+import eu.decentsoftware.holograms.api.holograms.Hologram;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Голограммы DecentHolograms. Строки используют формат цветов DecentHolograms.
+ */
+public class DecentHologramsBackend implements HologramBackend {
+
+    private final Set<String> ids = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void create(String id, Location chestLocation, List<String> lines, boolean visibleToAll) {
+        if (DHAPI.getHologram(id) != null) {
+            DHAPI.removeHologram(id);
+        }
+
+        Location holoLoc = chestLocation.clone().add(0.5, 1.5, 0.5);
+        // Голограммы удаляются при выключении и создаются заново, сохранять их в файлы DecentHolograms незачем
+        Hologram hologram = DHAPI.createHologram(id, holoLoc, false, lines);
+        hologram.setDefaultVisibleState(visibleToAll);
+        if (visibleToAll) {
+            hologram.showAll();
+        }
+        ids.add(id);
+    }
+
+    @Override
+    public void update(String id, List<String> lines) {
+        Hologram hologram = DHAPI.getHologram(id);
+        if (hologram != null) {
+            DHAPI.setHologramLines(hologram, lines);
+        }
+    }
+
+    @Override
+    public void show(String id, Player player) {
+        Hologram hologram = DHAPI.getHologram(id);
+        if (hologram != null) {
+            hologram.setShowPlayer(player);
+            hologram.show(player, 0);
+        }
+    }
+
+    @Override
+    public void hide(String id, Player player) {
+        Hologram hologram = DHAPI.getHologram(id);
+        if (hologram != null) {
+            hologram.removeShowPlayer(player);
+            hologram.hide(player);
+        }
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return DHAPI.getHologram(id) != null;
+    }
+
+    @Override
+    public void remove(String id) {
+        ids.remove(id);
+        Hologram hologram = DHAPI.getHologram(id);
+        if (hologram != null) {
+            hologram.delete();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        for (String id : new ArrayList<>(ids)) {
+            remove(id);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "DecentHolograms";
+    }
+}
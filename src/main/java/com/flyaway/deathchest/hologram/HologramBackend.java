@@ -0,0 +1,46 @@
+package com.flyaway.deathchest.hologram;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+/**
+ * Способ отображения голограмм над сундуками смерти. Методы create, update, exists, show и hide
+ * вызываются из потока региона, которому принадлежит сундук (на Paper — из основного потока).
+ */
+public interface HologramBackend {
+
+    /**
+     * Создаёт голограмму над блоком сундука
+     *
+     * @param id            уникальный идентификатор голограммы
+     * @param chestLocation расположение блока сундука
+     * @param lines         строки голограммы
+     * @param visibleToAll  видна ли голограмма всем игрокам; иначе только тем, кому её показали через show
+     */
+    void create(String id, Location chestLocation, List<String> lines, boolean visibleToAll);
+
+    /**
+     * Заменяет строки существующей голограммы
+     */
+    void update(String id, List<String> lines);
+
+    void show(String id, Player player);
+
+    void hide(String id, Player player);
+
+    /**
+     * Существует ли сейчас голограмма с этим идентификатором
+     */
+    boolean exists(String id);
+
+    void remove(String id);
+
+    /**
+     * Удаляет все голограммы, созданные этим способом
+     */
+    void removeAll();
+
+    String getName();
+}
@@ -0,0 +1,112 @@
+package com.flyaway.deathchest.hologram;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Location;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.entity.Display;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.TextDisplay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Голограммы на встроенных сущностях TextDisplay. Сущности не сохраняются в мир:
+ * при выгрузке чанка они исчезают, а при его загрузке создаются заново.
+ * Строки разбираются как MiniMessage.
+ */
+public class TextDisplayBackend implements HologramBackend {
+
+    private static final MiniMessage miniMessage = MiniMessage.miniMessage();
+
+    private final Plugin plugin;
+    private final Map<String, TextDisplay> displays = new ConcurrentHashMap<>();
+
+    public TextDisplayBackend(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void create(String id, Location chestLocation, List<String> lines, boolean visibleToAll) {
+        remove(id);
+
+        Component text = render(lines);
+        Location location = chestLocation.clone().add(0.5, 1.1, 0.5);
+
+        TextDisplay display = location.getWorld().spawn(location, TextDisplay.class, entity -> {
+            entity.setPersistent(false);
+            entity.setVisibleByDefault(visibleToAll);
+            entity.setBillboard(Display.Billboard.CENTER);
+            entity.text(text);
+        });
+        displays.put(id, display);
+    }
+
+    @Override
+    public void update(String id, List<String> lines) {
+        TextDisplay display = displays.get(id);
+        if (display != null && display.isValid()) {
+            display.text(render(lines));
+        }
+    }
+
+    private static Component render(List<String> lines) {
+        return miniMessage.deserialize(String.join("\n", lines));
+    }
+
+    @Override
+    public void show(String id, Player player) {
+        TextDisplay display = displays.get(id);
+        if (display != null && display.isValid()) {
+            player.showEntity(plugin, display);
+        }
+    }
+
+    @Override
+    public void hide(String id, Player player) {
+        TextDisplay display = displays.get(id);
+        if (display != null && display.isValid()) {
+            player.hideEntity(plugin, display);
+        }
+    }
+
+    @Override
+    public boolean exists(String id) {
+        TextDisplay display = displays.get(id);
+        if (display == null) return false;
+
+        if (!display.isValid()) {
+            displays.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void remove(String id) {
+        TextDisplay display = displays.remove(id);
+        if (display == null) return;
+
+        // На Folia сущность можно удалить только из потока её региона
+        if (plugin.getServer().isOwnedByCurrentRegion(display)) {
+            display.remove();
+        } else {
+            display.getScheduler().run(plugin, task -> display.remove(), null);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        for (String id : new ArrayList<>(displays.keySet())) {
+            remove(id);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "TextDisplay";
+    }
+}
@@ -0,0 +1,40 @@
+package com.flyaway.deathchest.index;
+
+/**
+ * Упаковка координат блока в один long: по 26 бит на x и z, 12 бит на y.
+ * Этого хватает на всю границу мира (±30 млн) и высоту до ±2048.
+ */
+public final class BlockKey {
+
+    private BlockKey() {
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFFL)
+                | (((long) z & 0x3FFFFFFL) << 26)
+                | (((long) y & 0xFFFL) << 52);
+    }
+
+    public static int x(long key) {
+        return (int) (key << 38 >> 38);
+    }
+
+    public static int y(long key) {
+        return (int) (key >> 52);
+    }
+
+    public static int z(long key) {
+        return (int) (key << 12 >> 38);
+    }
+
+    /**
+     * Ключ чанка в том же формате, что и Chunk#getChunkKey
+     */
+    public static long chunk(int chunkX, int chunkZ) {
+        return ((long) chunkX & 0xFFFFFFFFL) | (((long) chunkZ & 0xFFFFFFFFL) << 32);
+    }
+
+    public static long chunkOf(long key) {
+        return chunk(x(key) >> 4, z(key) >> 4);
+    }
+}
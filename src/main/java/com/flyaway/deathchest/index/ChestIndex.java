@@ -0,0 +1,233 @@
+package com.flyaway.deathchest.index;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Индекс по блокам: мир -> чанк -> упакованные координаты блока -> значение.
+ * Поиск по блоку не создаёт объектов Location, а чанки без сундуков отбрасываются одной проверкой.
+ * <p>
+ * Чтение идёт без блокировок, поэтому потоки регионов Folia не ждут друг друга на каждом
+ * событии. Изменять индекс может только один поток за раз: вызывающий код держит свою
+ * блокировку. Содержимое чанка хранится неизменяемым массивом и при изменении заменяется
+ * целиком — сундуков в чанке обычно единицы.
+ */
+public class ChestIndex<V> {
+
+    private final Map<UUID, WorldIndex<V>> worlds = new ConcurrentHashMap<>();
+    private volatile int size;
+
+    private static final class WorldIndex<V> {
+        private final Map<Long, ChunkBucket<V>> chunks = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Неизменяемые ключи блоков одного чанка и значения под теми же номерами
+     */
+    private record ChunkBucket<V>(long[] keys, V[] values) {
+
+        private V get(long key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        private int indexOf(long key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public V get(Block block) {
+        return get(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    public V get(Location location) {
+        return get(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    public V get(World world, int x, int y, int z) {
+        return get(world, BlockKey.pack(x, y, z));
+    }
+
+    /**
+     * Значение по упакованному ключу блока {@link BlockKey#pack}
+     */
+    public V get(World world, long key) {
+        if (world == null) return null;
+
+        WorldIndex<V> index = worlds.get(world.getUID());
+        if (index == null) return null;
+
+        ChunkBucket<V> bucket = index.chunks.get(BlockKey.chunkOf(key));
+        return bucket == null ? null : bucket.get(key);
+    }
+
+    public boolean contains(Block block) {
+        return get(block) != null;
+    }
+
+    public boolean contains(Location location) {
+        return get(location) != null;
+    }
+
+    /**
+     * Есть ли хотя бы одно значение в чанке
+     */
+    public boolean hasChunk(World world, int chunkX, int chunkZ) {
+        WorldIndex<V> index = worlds.get(world.getUID());
+        return index != null && index.chunks.containsKey(BlockKey.chunk(chunkX, chunkZ));
+    }
+
+    /**
+     * Есть ли хотя бы одно значение в прямоугольнике чанков (границы включительно)
+     */
+    public boolean hasAnyInChunks(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        WorldIndex<V> index = worlds.get(world.getUID());
+        if (index == null) return false;
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                if (index.chunks.containsKey(BlockKey.chunk(chunkX, chunkZ))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Обходит значения чанка; массив чанка неизменяем, поэтому внутри action индекс можно изменять
+     */
+    public void forEachInChunk(World world, int chunkX, int chunkZ, Consumer<? super V> action) {
+        WorldIndex<V> index = worlds.get(world.getUID());
+        if (index == null) return;
+
+        ChunkBucket<V> bucket = index.chunks.get(BlockKey.chunk(chunkX, chunkZ));
+        if (bucket == null) return;
+
+        for (V value : bucket.values()) {
+            action.accept(value);
+        }
+    }
+
+    public void forEachInWorld(World world, Consumer<? super V> action) {
+        WorldIndex<V> index = worlds.get(world.getUID());
+        if (index == null) return;
+
+        for (ChunkBucket<V> bucket : index.chunks.values()) {
+            for (V value : bucket.values()) {
+                action.accept(value);
+            }
+        }
+    }
+
+    public V put(Location location, V value) {
+        WorldIndex<V> index = worlds.computeIfAbsent(location.getWorld().getUID(), uid -> new WorldIndex<>());
+        long key = BlockKey.pack(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        long chunkKey = BlockKey.chunkOf(key);
+        ChunkBucket<V> bucket = index.chunks.get(chunkKey);
+
+        if (bucket == null) {
+            index.chunks.put(chunkKey, new ChunkBucket<>(new long[]{key}, values(value)));
+            size++;
+            return null;
+        }
+
+        int slot = bucket.indexOf(key);
+        V[] values = Arrays.copyOf(bucket.values(), bucket.values().length + (slot < 0 ? 1 : 0));
+        if (slot >= 0) {
+            values[slot] = value;
+            index.chunks.put(chunkKey, new ChunkBucket<>(bucket.keys(), values));
+            return bucket.values()[slot];
+        }
+
+        long[] keys = Arrays.copyOf(bucket.keys(), bucket.keys().length + 1);
+        keys[keys.length - 1] = key;
+        values[values.length - 1] = value;
+        index.chunks.put(chunkKey, new ChunkBucket<>(keys, values));
+        size++;
+        return null;
+    }
+
+    public V remove(Location location) {
+        if (location.getWorld() == null) return null;
+
+        UUID worldId = location.getWorld().getUID();
+        WorldIndex<V> index = worlds.get(worldId);
+        if (index == null) return null;
+
+        long key = BlockKey.pack(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        long chunkKey = BlockKey.chunkOf(key);
+        ChunkBucket<V> bucket = index.chunks.get(chunkKey);
+        int slot = bucket == null ? -1 : bucket.indexOf(key);
+        if (slot < 0) return null;
+
+        int last = bucket.keys().length - 1;
+        if (last == 0) {
+            index.chunks.remove(chunkKey);
+            if (index.chunks.isEmpty()) {
+                worlds.remove(worldId);
+            }
+        } else {
+            long[] keys = Arrays.copyOf(bucket.keys(), last);
+            V[] values = Arrays.copyOf(bucket.values(), last);
+            if (slot < last) {
+                keys[slot] = bucket.keys()[last];
+                values[slot] = bucket.values()[last];
+            }
+            index.chunks.put(chunkKey, new ChunkBucket<>(keys, values));
+        }
+        size--;
+        return bucket.values()[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        worlds.clear();
+        size = 0;
+    }
+
+    public void forEach(Consumer<? super V> action) {
+        for (WorldIndex<V> index : worlds.values()) {
+            for (ChunkBucket<V> bucket : index.chunks.values()) {
+                for (V value : bucket.values()) {
+                    action.accept(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Копия всех значений — её можно обходить, изменяя индекс
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        forEach(result::add);
+        return result;
+    }
+
+    @SafeVarargs
+    private static <V> V[] values(V... values) {
+        return values;
+    }
+}
@@ -0,0 +1,237 @@
+package com.flyaway.deathchest.index;
+
+import org.bukkit.World;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Метаданные установленных сундуков в виде столбцов: одна строка на сундук,
+ * каждое поле лежит в своём примитивном массиве. UUID владельца хранится двумя long,
+ * имена владельцев и миры — номерами в общих словарях, координаты — упакованным ключом блока.
+ * Миры в словаре запоминаются по UUID и слабой ссылке, поэтому таблица не удерживает выгруженные миры.
+ * Освобождённые строки переиспользуются.
+ * <p>
+ * Изменения выполняются под блокировкой записи. Чтение по номеру строки идёт без блокировок:
+ * вызывающий код берёт метку {@link #tryOptimisticRead()}, читает значения и проверяет метку
+ * через {@link #validate(long)}; если таблица за это время менялась, чтение повторяется под
+ * {@link #readLock()}. Методы *At проверяют границы массивов и не бросают исключений, даже если
+ * строку освободили или столбцы пересоздали посреди чтения: такое значение отбросит проверка метки.
+ */
+public class ChestTable {
+
+    private static final int FREE = -1;
+
+    private final StampedLock lock = new StampedLock();
+
+    private long[] ownerMost = new long[0];
+    private long[] ownerLeast = new long[0];
+    private int[] ownerNames = new int[0];
+    private int[] worlds = new int[0];
+    private long[] blocks = new long[0];
+    private long[] creationTimes = new long[0];
+    // Идентификатор голограммы уникален и всё равно хранится у способа отображения — здесь только ссылка
+    private String[] hologramIds = new String[0];
+
+    private int highWater;
+    private int size;
+    private int[] freeRows = new int[0];
+    private int freeCount;
+
+    // Словари только растут: имён и миров на сервере на порядки меньше, чем сундуков.
+    // Хранятся массивами, чтобы чтение без блокировки могло проверить границы
+    private String[] names = new String[0];
+    private int nameCount;
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private UUID[] worldIds = new UUID[0];
+    private String[] worldNames = new String[0];
+    @SuppressWarnings("unchecked")
+    private WeakReference<World>[] worldRefs = new WeakReference[0];
+    private int worldCount;
+    private final Map<UUID, Integer> worldIndex = new HashMap<>();
+
+    public long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    public boolean validate(long stamp) {
+        return lock.validate(stamp);
+    }
+
+    public long readLock() {
+        return lock.readLock();
+    }
+
+    public void unlockRead(long stamp) {
+        lock.unlockRead(stamp);
+    }
+
+    public long writeLock() {
+        return lock.writeLock();
+    }
+
+    public void unlockWrite(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+
+    /**
+     * Занимает строку; вызывается под блокировкой записи
+     */
+    public int insert(UUID owner, String ownerName, World world, int x, int y, int z,
+                      long creationTime, String hologramId) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            if (highWater == worlds.length) {
+                grow(Math.max(16, highWater << 1));
+            }
+            row = highWater++;
+        }
+
+        ownerMost[row] = owner.getMostSignificantBits();
+        ownerLeast[row] = owner.getLeastSignificantBits();
+        ownerNames[row] = internName(ownerName);
+        worlds[row] = internWorld(world);
+        blocks[row] = BlockKey.pack(x, y, z);
+        creationTimes[row] = creationTime;
+        hologramIds[row] = hologramId;
+        size++;
+        return row;
+    }
+
+    /**
+     * Освобождает строку; вызывается под блокировкой записи
+     */
+    public void release(int row) {
+        if (worlds[row] == FREE) return;
+
+        worlds[row] = FREE;
+        hologramIds[row] = null;
+        size--;
+
+        if (size == 0) {
+            // Таблица опустела: память столбцов возвращается целиком
+            reset();
+            return;
+        }
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, Math.max(16, freeCount << 1));
+        }
+        freeRows[freeCount++] = row;
+    }
+
+    /**
+     * Меняет идентификатор голограммы; вызывается под блокировкой записи
+     */
+    public void setHologramIdAt(int row, String hologramId) {
+        hologramIds[row] = hologramId;
+    }
+
+    public UUID ownerAt(int row) {
+        long[] most = ownerMost;
+        long[] least = ownerLeast;
+        return row < most.length && row < least.length ? new UUID(most[row], least[row]) : null;
+    }
+
+    public String ownerNameAt(int row) {
+        return element(names, element(ownerNames, row));
+    }
+
+    public UUID worldIdAt(int row) {
+        return element(worldIds, element(worlds, row));
+    }
+
+    public String worldNameAt(int row) {
+        return element(worldNames, element(worlds, row));
+    }
+
+    /**
+     * Мир строки без поиска по серверу; null, если мир выгружен
+     */
+    public World worldAt(int row) {
+        WeakReference<World> ref = element(worldRefs, element(worlds, row));
+        return ref == null ? null : ref.get();
+    }
+
+    public long blockAt(int row) {
+        long[] column = blocks;
+        return row < column.length ? column[row] : 0L;
+    }
+
+    public long creationTimeAt(int row) {
+        long[] column = creationTimes;
+        return row < column.length ? column[row] : 0L;
+    }
+
+    public String hologramIdAt(int row) {
+        return element(hologramIds, row);
+    }
+
+    private static int element(int[] column, int row) {
+        return row < column.length ? column[row] : FREE;
+    }
+
+    private static <T> T element(T[] column, int index) {
+        return index >= 0 && index < column.length ? column[index] : null;
+    }
+
+    private void reset() {
+        ownerMost = new long[0];
+        ownerLeast = new long[0];
+        ownerNames = new int[0];
+        worlds = new int[0];
+        blocks = new long[0];
+        creationTimes = new long[0];
+        hologramIds = new String[0];
+        freeRows = new int[0];
+        highWater = 0;
+        size = 0;
+        freeCount = 0;
+    }
+
+    private void grow(int capacity) {
+        ownerMost = Arrays.copyOf(ownerMost, capacity);
+        ownerLeast = Arrays.copyOf(ownerLeast, capacity);
+        ownerNames = Arrays.copyOf(ownerNames, capacity);
+        blocks = Arrays.copyOf(blocks, capacity);
+        creationTimes = Arrays.copyOf(creationTimes, capacity);
+        hologramIds = Arrays.copyOf(hologramIds, capacity);
+        int old = worlds.length;
+        worlds = Arrays.copyOf(worlds, capacity);
+        Arrays.fill(worlds, old, capacity, FREE);
+    }
+
+    private int internName(String name) {
+        if (name == null) return FREE;
+        return nameIds.computeIfAbsent(name, key -> {
+            if (nameCount == names.length) {
+                names = Arrays.copyOf(names, Math.max(16, nameCount << 1));
+            }
+            names[nameCount] = key;
+            return nameCount++;
+        });
+    }
+
+    private int internWorld(World world) {
+        Integer id = worldIndex.get(world.getUID());
+        if (id == null) {
+            if (worldCount == worldIds.length) {
+                int capacity = Math.max(4, worldCount << 1);
+                worldIds = Arrays.copyOf(worldIds, capacity);
+                worldNames = Arrays.copyOf(worldNames, capacity);
+                worldRefs = Arrays.copyOf(worldRefs, capacity);
+            }
+            id = worldCount++;
+            worldIds[id] = world.getUID();
+            worldNames[id] = world.getName();
+            worldRefs[id] = new WeakReference<>(world);
+            worldIndex.put(world.getUID(), id);
+        } else if (worldRefs[id].get() != world) {
+            // Мир загрузили заново — это новый объект с тем же UUID
+            worldRefs[id] = new WeakReference<>(world);
+        }
+        return id;
+    }
+}
@@ -39,18 +39,22 @@ public class ChestInteractionListener implements Listener {
         }
 
         Block block = event.getClickedBlock();
+        // Тип блока читается в потоке региона без обращения к индексам
         if (block == null || block.getType() != Material.CHEST) {
             return;
         }
 
-        Location location = block.getLocation();
-        if (!chestManager.isDeathChest(location)) {
+        ChestManager.DeathChestData deathChest = chestManager.getDeathChest(block);
+        if (deathChest == null) {
+            // Ещё не установленный сундук не открывается: положенные в него предметы пропали бы при установке
+            if (chestManager.isPendingChest(block)) {
+                event.setCancelled(true);
+            }
             return;
         }
 
         event.setCancelled(true);
 
-        ChestManager.DeathChestData deathChest = chestManager.getDeathChest(location);
         Player player = event.getPlayer();
 
         if (!player.hasPermission("deathchest.use")) {
@@ -75,9 +79,7 @@ public class ChestInteractionListener implements Listener {
             player.sendMessage(message);
         }
 
-        Inventory inventory = deathChest.getInventory();
-        chestManager.registerOpenInventory(player, inventory, location);
-        player.openInventory(inventory);
+        player.openInventory(deathChest.getInventory());
     }
 
     @EventHandler
@@ -87,14 +89,17 @@ public class ChestInteractionListener implements Listener {
             return;
         }
 
-        Location location = block.getLocation();
-        if (!chestManager.isDeathChest(location)) {
+        ChestManager.DeathChestData deathChest = chestManager.getDeathChest(block);
+        if (deathChest == null) {
+            if (chestManager.isPendingChest(block)) {
+                event.setCancelled(true);
+            }
             return;
         }
 
         event.setCancelled(true);
 
-        ChestManager.DeathChestData deathChest = chestManager.getDeathChest(location);
+        Location location = deathChest.getLocation();
         Player player = event.getPlayer();
 
         if (!player.hasPermission("deathchest.use")) {
@@ -113,7 +118,7 @@ public class ChestInteractionListener implements Listener {
         }
 
         if (!configManager.isPlayerBreakable()) {
-            if (isInventoryEmpty(deathChest.getInventory())) {
+            if (isInventoryEmpty(deathChest.getContents())) {
                 chestManager.removeDeathChest(location);
                 Component message = MessageManager.buildMessage("chest-removed",
                         "<green>Сундук смерти исчез, так как вы забрали все предметы");
@@ -127,7 +132,7 @@ public class ChestInteractionListener implements Listener {
         }
 
         if (configManager.dropItemsWhenBroken()) {
-            dropItems(deathChest.getInventory().getContents(), location);
+            dropItems(deathChest.getContents(), location);
         }
 
         chestManager.removeDeathChest(location);
@@ -147,83 +152,76 @@ public class ChestInteractionListener implements Listener {
     @EventHandler
     public void onInventoryClose(InventoryCloseEvent event) {
         Inventory inventory = event.getInventory();
-        Player player = (Player) event.getPlayer();
-
-        Location chestLocation = chestManager.getLocationByInventory(inventory);
-        if (chestLocation == null) {
+        if (!(inventory.getHolder(false) instanceof ChestManager.DeathChestHolder holder)) {
             return;
         }
 
-        ChestManager.DeathChestData deathChest = chestManager.getDeathChest(chestLocation);
-        if (deathChest == null) {
+        ChestManager.DeathChestData deathChest = holder.getChest();
+        // Простой отсчитывается от закрытия, а не от открытия инвентаря
+        deathChest.touch();
+        if (!chestManager.isActive(deathChest)) {
             return;
         }
 
-        if (configManager.removeEmptyChests() && isInventoryEmpty(inventory)) {
-            chestManager.removeDeathChest(chestLocation);
+        Player player = (Player) event.getPlayer();
+
+        if (configManager.removeEmptyChests() && isInventoryEmpty(inventory.getContents())) {
+            chestManager.removeDeathChest(deathChest.getLocation());
             Component message = MessageManager.buildMessage("chest-removed",
                     "<green>Сундук смерти исчез, так как вы забрали все предметы");
             player.sendMessage(message);
         } else {
-            chestManager.unregisterOpenInventory(player, inventory);
             chestManager.updateDeathChest(deathChest);
         }
     }
 
     @EventHandler
     public void onBlockExplode(BlockExplodeEvent event) {
-        if (configManager.isExplosionProof()) {
-            event.blockList().removeIf(block ->
-                    block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())
-            );
-        } else {
-            List<Block> toRemove = new ArrayList<>();
-            for (Block block : event.blockList()) {
-                if (block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())) {
-                    Location location = block.getLocation();
-                    ChestManager.DeathChestData deathChest = chestManager.getDeathChest(location);
-
-                    if (configManager.dropItemsWhenExploded()) {
-                        dropItems(deathChest.getInventory().getContents(), location);
-                    }
-
-                    toRemove.add(block);
-                    chestManager.removeDeathChest(location);
-                }
-            }
-            event.blockList().removeAll(toRemove);
-        }
+        handleExplosion(event.blockList());
     }
 
     @EventHandler
     public void onEntityExplode(EntityExplodeEvent event) {
-        if (configManager.isExplosionProof()) {
-            event.blockList().removeIf(block ->
-                    block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())
-            );
-        } else {
-            List<Block> toRemove = new ArrayList<>();
-            for (Block block : event.blockList()) {
-                if (block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())) {
-                    Location location = block.getLocation();
-                    ChestManager.DeathChestData deathChest = chestManager.getDeathChest(location);
-
-                    if (configManager.dropItemsWhenExploded()) {
-                        dropItems(deathChest.getInventory().getContents(), location);
-                    }
-
-                    toRemove.add(block);
-                    chestManager.removeDeathChest(location);
+        handleExplosion(event.blockList());
+    }
+
+    /**
+     * Общая обработка взрывов: список блоков фильтруется за один проход.
+     * Сундуки смерти либо исключаются из взрыва, либо удаляются с выпадением предметов.
+     */
+    private void handleExplosion(List<Block> blocks) {
+        if (!mayContainDeathChest(blocks)) {
+            return;
+        }
+
+        boolean explosionProof = configManager.isExplosionProof();
+        boolean dropItems = configManager.dropItemsWhenExploded();
+
+        // Сундук сам выдаёт предметы и исчезает, поэтому блок в любом случае убирается из взрыва
+        blocks.removeIf(block -> {
+            if (block.getType() != Material.CHEST) return false;
+
+            ChestManager.DeathChestData deathChest = chestManager.getDeathChest(block);
+            if (deathChest == null) {
+                // Ещё не установленный сундук просто не взрывается
+                return chestManager.isPendingChest(block);
+            }
+
+            if (!explosionProof) {
+                Location location = deathChest.getLocation();
+                if (dropItems) {
+                    dropItems(deathChest.getContents(), location);
                 }
+                chestManager.removeDeathChest(location);
             }
-            event.blockList().removeAll(toRemove);
-        }
+            return true;
+        });
     }
 
     @EventHandler
     public void onBlockBurn(BlockBurnEvent event) {
         Block block = event.getBlock();
-        if (block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())) {
+        if (isProtectedChest(block)) {
             event.setCancelled(true);
         }
     }
@@ -231,15 +229,19 @@ public class ChestInteractionListener implements Listener {
     @EventHandler
     public void onBlockIgnite(BlockIgniteEvent event) {
         Block block = event.getBlock();
-        if (block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())) {
+        if (isProtectedChest(block)) {
             event.setCancelled(true);
         }
     }
 
     @EventHandler
     public void onPistonExtend(BlockPistonExtendEvent event) {
+        if (!mayContainDeathChest(event.getBlocks())) {
+            return;
+        }
+
         for (Block block : event.getBlocks()) {
-            if (block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())) {
+            if (isProtectedChest(block)) {
                 event.setCancelled(true);
                 return;
             }
@@ -248,16 +250,60 @@ public class ChestInteractionListener implements Listener {
 
     @EventHandler
     public void onPistonRetract(BlockPistonRetractEvent event) {
+        if (!mayContainDeathChest(event.getBlocks())) {
+            return;
+        }
+
         for (Block block : event.getBlocks()) {
-            if (block.getType() == Material.CHEST && chestManager.isDeathChest(block.getLocation())) {
+            if (isProtectedChest(block)) {
                 event.setCancelled(true);
                 return;
             }
         }
     }
 
-    private boolean isInventoryEmpty(Inventory inventory) {
-        for (ItemStack item : inventory.getContents()) {
+    /**
+     * Установленный сундук смерти или сундук, который ещё ждёт установки
+     */
+    private boolean isProtectedChest(Block block) {
+        return block.getType() == Material.CHEST
+                && (chestManager.isDeathChest(block) || chestManager.isPendingChest(block));
+    }
+
+    /**
+     * Отбрасывает событие целиком, если среди блоков нет сундуков или ни в одном
+     * из чанков с сундуками нет сундуков смерти
+     */
+    private boolean mayContainDeathChest(List<Block> blocks) {
+        Block first = null;
+        int minChunkX = 0;
+        int minChunkZ = 0;
+        int maxChunkX = 0;
+        int maxChunkZ = 0;
+
+        for (Block block : blocks) {
+            if (block.getType() != Material.CHEST) continue;
+
+            if (first == null) {
+                first = block;
+                minChunkX = maxChunkX = block.getX() >> 4;
+                minChunkZ = maxChunkZ = block.getZ() >> 4;
+                continue;
+            }
+            int chunkX = block.getX() >> 4;
+            int chunkZ = block.getZ() >> 4;
+            if (chunkX < minChunkX) minChunkX = chunkX;
+            else if (chunkX > maxChunkX) maxChunkX = chunkX;
+            if (chunkZ < minChunkZ) minChunkZ = chunkZ;
+            else if (chunkZ > maxChunkZ) maxChunkZ = chunkZ;
+        }
+
+        return first != null
+                && chestManager.hasDeathChestsInChunks(first.getWorld(), minChunkX, minChunkZ, maxChunkX, maxChunkZ);
+    }
+
+    private boolean isInventoryEmpty(ItemStack[] contents) {
+        for (ItemStack item : contents) {
             if (item != null && item.getType() != Material.AIR) {
                 return false;
             }
@@ -265,10 +311,42 @@ public class ChestInteractionListener implements Listener {
         return true;
     }
 
+    /**
+     * Выбрасывает содержимое сундука, предварительно объединив одинаковые предметы
+     * в полные стопки, чтобы создавать как можно меньше сущностей
+     */
     private void dropItems(ItemStack[] items, Location location) {
+        // Суммы храним отдельно: в самом ItemStack количество не должно превышать размер стопки
+        List<ItemStack> types = new ArrayList<>();
+        List<Integer> amounts = new ArrayList<>();
         for (ItemStack item : items) {
-            if (item != null && item.getType() != Material.AIR) {
-                location.getWorld().dropItemNaturally(location, item);
+            if (item == null || item.getType() == Material.AIR) continue;
+
+            int index = -1;
+            for (int i = 0; i < types.size(); i++) {
+                if (types.get(i).isSimilar(item)) {
+                    index = i;
+                    break;
+                }
+            }
+
+            if (index >= 0) {
+                amounts.set(index, amounts.get(index) + item.getAmount());
+            } else {
+                types.add(item);
+                amounts.add(item.getAmount());
+            }
+        }
+
+        for (int i = 0; i < types.size(); i++) {
+            ItemStack type = types.get(i);
+            int maxStackSize = Math.max(1, type.getMaxStackSize());
+            int amount = amounts.get(i);
+            while (amount > 0) {
+                ItemStack drop = type.clone();
+                drop.setAmount(Math.min(amount, maxStackSize));
+                amount -= drop.getAmount();
+                location.getWorld().dropItemNaturally(location, drop);
             }
         }
     }
@@ -0,0 +1,34 @@
+package com.flyaway.deathchest.listeners;
+
+import com.flyaway.deathchest.DeathChest;
+import com.flyaway.deathchest.managers.ChestManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+public class ChunkListener implements Listener {
+
+    private final ChestManager chestManager;
+
+    public ChunkListener(DeathChest plugin) {
+        this.chestManager = plugin.getChestManager();
+    }
+
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        chestManager.onChunkLoad(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        chestManager.onChunkUnload(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        chestManager.onWorldUnload(event.getWorld());
+    }
+}
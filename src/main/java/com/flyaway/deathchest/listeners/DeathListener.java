@@ -1,6 +1,7 @@
 package com.flyaway.deathchest.listeners;
 
 import com.flyaway.deathchest.DeathChest;
+import com.flyaway.deathchest.filter.DropFilter;
 import com.flyaway.deathchest.managers.ChestManager;
 import com.flyaway.deathchest.managers.ConfigManager;
 import com.flyaway.deathchest.managers.MessageManager;
@@ -20,9 +21,7 @@ import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.projectiles.ProjectileSource;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class DeathListener implements Listener {
 
@@ -44,12 +43,24 @@ public class DeathListener implements Listener {
 
         if (!player.hasPermission("deathchest.use")) return;
         if (!shouldCreateDeathChest(player)) return;
-        if (!isWorldAllowed(player.getWorld().getName())) return;
+        if (!configManager.isWorldAllowed(player.getWorld().getName())) return;
 
+        DropFilter filter = configManager.getDropFilter();
         List<ItemStack> drops = new ArrayList<>();
-        for (ItemStack item : event.getDrops()) {
-            if (item != null && item.getType() != Material.AIR) {
-                drops.add(item.clone());
+        Set<ItemStack> chestDrops = Collections.newSetFromMap(new IdentityHashMap<>());
+        Iterator<ItemStack> iterator = event.getDrops().iterator();
+        while (iterator.hasNext()) {
+            ItemStack item = iterator.next();
+            if (item == null || item.getType() == Material.AIR) continue;
+
+            switch (filter.route(item)) {
+                case CHEST -> {
+                    drops.add(item.clone());
+                    chestDrops.add(item);
+                }
+                case DELETE -> iterator.remove();
+                case GROUND -> {
+                }
             }
         }
 
@@ -57,14 +68,15 @@ public class DeathListener implements Listener {
             return;
         }
 
-        Location chestLocation = findChestLocation(player.getLocation());
+        Location chestLocation = chestManager.findChestLocation(player.getLocation());
         if (chestLocation == null) {
             plugin.getLogger().warning("Не удалось найти подходящее место для сундука смерти игрока " + player.getName());
             return;
         }
 
         if (chestManager.createDeathChest(player, drops, chestLocation)) {
-            event.getDrops().clear();
+            // Предметы с маршрутом ground остаются выпадать на землю
+            event.getDrops().removeIf(chestDrops::contains);
 
             Component message = MessageManager.buildMessage("chest-created",
                     "Ваш сундук смерти создан на координатах: X: {x} Y: {y} Z: {z}",
@@ -101,36 +113,4 @@ public class DeathListener implements Listener {
 
         return false;
     }
-
-    private boolean isWorldAllowed(String worldName) {
-        List<String> allowedWorlds = configManager.getAllowedWorlds();
-        List<String> blacklistedWorlds = configManager.getBlacklistedWorlds();
-
-        if (!allowedWorlds.isEmpty() && !allowedWorlds.contains(worldName)) {
-            return false;
-        }
-
-        return !blacklistedWorlds.contains(worldName);
-    }
-
-    private Location findChestLocation(Location deathLocation) {
-        Location location = deathLocation.clone();
-
-        if (chestManager.isSuitableForChest(location.getBlock())) {
-            return location;
-        }
-
-        for (int x = -1; x <= 1; x++) {
-            for (int z = -1; z <= 1; z++) {
-                for (int y = -2; y <= 2; y++) {
-                    Location testLoc = location.clone().add(x, y, z);
-                    if (chestManager.isSuitableForChest(testLoc.getBlock())) {
-                        return testLoc;
-                    }
-                }
-            }
-        }
-
-        return null;
-    }
 }
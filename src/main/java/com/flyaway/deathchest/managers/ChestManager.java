@@ -1,29 +1,74 @@
 package com.flyaway.deathchest.managers;
 
 import com.flyaway.deathchest.DeathChest;
-import eu.decentsoftware.holograms.api.DHAPI;
+import com.flyaway.deathchest.index.BlockKey;
+import com.flyaway.deathchest.index.ChestIndex;
+import com.flyaway.deathchest.index.ChestTable;
+import com.flyaway.deathchest.placement.ChestPlacementSearch;
+import com.flyaway.deathchest.scheduler.ExpiryQueue;
+import com.flyaway.deathchest.scheduler.TickBudgetScheduler;
+import com.flyaway.deathchest.storage.ChestRecord;
+import com.flyaway.deathchest.storage.ChestStorage;
+import com.flyaway.deathchest.storage.ItemCodec;
+import com.flyaway.deathchest.storage.LogChestStorage;
+import com.flyaway.deathchest.storage.SqliteChestStorage;
+import com.flyaway.deathchest.storage.YamlChestStorage;
 import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class ChestManager {
 
     private final DeathChest plugin;
-    private final Map<Location, DeathChestData> deathChests;
-    private final Map<Location, InventoryTracker> openInventories;
-    private final File chestsFile;
+    private final TickBudgetScheduler workScheduler;
+    private final ChestPlacementSearch placementSearch;
+    private static final long EXPIRY_RETRY_MILLIS = 10_000L;
+
+    // Индексы и очереди ниже изменяются под блокировкой на this: на Folia к ним обращаются потоки разных регионов.
+    // Под блокировкой выполняются только операции с коллекциями, блоки и инвентари меняются вне её.
+    // deathChests, pendingChests и reloadGuard читаются без блокировки: их проверяет каждое событие с блоком.
+    private final ChestIndex<DeathChestData> deathChests;
+    private final ExpiryQueue<DeathChestData> expiryQueue;
+    // Метаданные установленных сундуков
+    private final ChestTable table = new ChestTable();
+    // Индекс по владельцу: установленные сундуки и записи, ждущие загрузки чанка
+    private final Map<UUID, Set<DeathChestData>> chestsByOwner;
+    private final Map<UUID, List<ChestRecord>> pendingByOwner;
+    // Сундуки, у которых сейчас есть инвентарь Bukkit; только их проверяет упаковка неактивных
+    private final Set<DeathChestData> materialized;
+    private final AtomicInteger expiredCount = new AtomicInteger();
+    private static final int STALE_EXPIRY_MIN = 256;
+    private int staleExpiryEntries;
+    // Номер текущей загрузки: результат чтения, завершившегося после отключения или новой загрузки, отбрасывается
+    private final AtomicLong loadGeneration = new AtomicLong();
+    // Заголовок сундука разбирается один раз, при создании инвентаря подставляется только имя
+    private volatile MessageTemplate titleTemplate;
+    // Сундуки, чьи чанки ещё не загружались: мир -> ключ чанка -> записи.
+    // Списки чанков неизменяемы и при изменении заменяются целиком
+    private final Map<String, Map<Long, List<ChestRecord>>> pendingChests;
+    // Позиции сундуков, известных до перезагрузки: пока хранилище перечитывается, их блоки защищены.
+    // Мир -> ключ чанка -> упакованные ключи блоков; очищается, когда записи разложены по индексам
+    private volatile Map<String, Map<Long, long[]>> reloadGuard = Map.of();
+    private final ChestStorage storage;
 
     private static final Set<Material> SOFT_BLOCKS = EnumSet.of(
             Material.TALL_GRASS,
@@ -70,96 +115,375 @@ public class ChestManager {
 
     public ChestManager(DeathChest plugin) {
         this.plugin = plugin;
-        this.deathChests = new HashMap<>();
-        this.openInventories = new HashMap<>();
-        this.chestsFile = new File(plugin.getDataFolder(), "chests.yml");
+        this.workScheduler = plugin.getWorkScheduler();
+        this.placementSearch = new ChestPlacementSearch(this::isSuitableForChest);
+        this.deathChests = new ChestIndex<>();
+        this.expiryQueue = new ExpiryQueue<>();
+        this.chestsByOwner = new HashMap<>();
+        this.pendingByOwner = new HashMap<>();
+        this.materialized = new HashSet<>();
+        this.pendingChests = new ConcurrentHashMap<>();
+        this.storage = createStorage(plugin.getConfigManager().getStorageType());
+        this.titleTemplate = MessageTemplate.compile(plugin.getConfigManager().getChestTitle());
     }
 
+    /**
+     * Заголовок инвентаря сундука смерти для указанного владельца
+     */
+    public Component buildTitle(String ownerName) {
+        return titleTemplate.render(Map.of("player", ownerName));
+    }
+
+    private ChestStorage createStorage(String type) {
+        File dataFolder = plugin.getDataFolder();
+        File yamlFile = new File(dataFolder, "chests.yml");
+
+        switch (type.toLowerCase()) {
+            case "yaml":
+                return new YamlChestStorage(yamlFile, plugin.getLogger());
+            case "sqlite":
+                if (SqliteChestStorage.isAvailable()) {
+                    return new SqliteChestStorage(new File(dataFolder, "chests.db"), plugin.getLogger());
+                }
+                plugin.getLogger().warning("Драйвер SQLite не найден — используется хранилище log");
+                break;
+            case "log":
+                break;
+            default:
+                plugin.getLogger().warning("Неизвестный тип хранилища " + type + " — используется хранилище log");
+                break;
+        }
+
+        return new LogChestStorage(new File(dataFolder, "chests.dat"), yamlFile, plugin.getLogger());
+    }
+
+    /**
+     * Сундук смерти. Пока сундук установлен, его метаданные лежат строкой в общей
+     * таблице ChestTable, а объект лишь ссылается на неё; до установки и после удаления
+     * метаданные хранятся в самом объекте.
+     * Пока сундук никто не открывает, содержимое лежит в памяти
+     * сериализованным массивом байтов; инвентарь Bukkit создаётся при первом обращении
+     * и возвращается в байты, когда после закрытия пройдёт inventory-idle-seconds.
+     */
     public static class DeathChestData {
-        private final UUID owner;
-        private final String ownerName;
-        private final Inventory inventory;
-        private final long creationTime;
-        private String hologramId;
-        private final Location location;
+        private final DeathChest plugin;
+        private final ChestTable table;
+        private final int size;
+        // Меняются под блокировкой записи таблицы: ровно одно из них указывает на метаданные
+        private int row = -1;
+        private Metadata detached;
+        // Ровно одно из двух полей не null, если в сундуке что-то есть; защищены блокировкой на объекте
+        private Inventory inventory;
+        private byte[] packed;
+        private volatile long lastAccess;
+
+        public DeathChestData(DeathChest plugin, ChestTable table, UUID owner, String ownerName, int size, Location location) {
+            this(plugin, table, owner, ownerName, size, null, location, System.currentTimeMillis());
+        }
 
-        public DeathChestData(DeathChest plugin, UUID owner, String ownerName, int size, Location location) {
-            this(plugin, owner, ownerName, size, null, location, System.currentTimeMillis());
+        public DeathChestData(DeathChest plugin, ChestTable table, UUID owner, String ownerName, int size,
+                              String hologramId, Location location, long creationTime) {
+            this.plugin = plugin;
+            this.table = table;
+            this.size = size;
+            World world = location.getWorld();
+            this.detached = new Metadata(owner, ownerName, world.getUID(), world.getName(),
+                    location.getBlockX(), location.getBlockY(), location.getBlockZ(), creationTime, hologramId);
         }
 
-        public DeathChestData(DeathChest plugin, UUID owner, String ownerName, int size, String hologramId, Location location, long creationTime) {
-            this.owner = owner;
-            this.ownerName = ownerName;
-            this.hologramId = hologramId;
-            this.location = location;
-            this.creationTime = creationTime;
+        /**
+         * Метаданные вне таблицы. Мир хранится по UUID: удалённый или выгруженный сундук,
+         * который ещё где-то упомянут (например, в очереди сроков), не удерживает мир в памяти.
+         */
+        private record Metadata(UUID owner, String ownerName, UUID worldId, String worldName,
+                                int x, int y, int z, long creationTime, String hologramId) {
+
+            private Metadata withHologramId(String id) {
+                return new Metadata(owner, ownerName, worldId, worldName, x, y, z, creationTime, id);
+            }
 
-            String title = plugin.getConfigManager().getChestTitle().replace("{player}", ownerName);
+            private long blockKey() {
+                return BlockKey.pack(x, y, z);
+            }
+        }
 
-            Component titleComponent = MiniMessage.miniMessage().deserialize(title);
-            this.inventory = plugin.getServer().createInventory(null, size, titleComponent);
+        @FunctionalInterface
+        private interface RowReader<T> {
+            T read(ChestTable table, int row);
+        }
+
+        /**
+         * Читает поле без блокировки; если таблица менялась во время чтения, повторяет под блокировкой чтения.
+         * Методы *At таблицы не бросают исключений на освобождённой строке, поэтому проверки метки достаточно.
+         */
+        private <T> T read(RowReader<T> reader, Function<Metadata, T> fallback) {
+            long stamp = table.tryOptimisticRead();
+            if (stamp != 0L) {
+                int r = row;
+                Metadata m = detached;
+                T value = r >= 0 ? reader.read(table, r) : m != null ? fallback.apply(m) : null;
+                if (table.validate(stamp)) return value;
+            }
+            stamp = table.readLock();
+            try {
+                return row >= 0 ? reader.read(table, row) : fallback.apply(detached);
+            } finally {
+                table.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Переносит метаданные в таблицу; вызывается при добавлении сундука в индекс
+         */
+        private void attach() {
+            long stamp = table.writeLock();
+            try {
+                if (row >= 0) return;
+
+                Metadata m = detached;
+                World world = Bukkit.getWorld(m.worldId());
+                // Мир уже выгружен: метаданные остаются в объекте
+                if (world == null) return;
+
+                row = table.insert(m.owner(), m.ownerName(), world, m.x(), m.y(), m.z(),
+                        m.creationTime(), m.hologramId());
+                detached = null;
+            } finally {
+                table.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Возвращает метаданные в объект и освобождает строку таблицы; вызывается при удалении из индекса
+         */
+        private void detach() {
+            long stamp = table.writeLock();
+            try {
+                if (row < 0) return;
+
+                long block = table.blockAt(row);
+                detached = new Metadata(table.ownerAt(row), table.ownerNameAt(row), table.worldIdAt(row),
+                        table.worldNameAt(row), BlockKey.x(block), BlockKey.y(block), BlockKey.z(block),
+                        table.creationTimeAt(row), table.hologramIdAt(row));
+                table.release(row);
+                row = -1;
+            } finally {
+                table.unlockWrite(stamp);
+            }
         }
 
         public UUID getOwner() {
-            return owner;
+            return read(ChestTable::ownerAt, Metadata::owner);
         }
 
         public String getOwnerName() {
-            return ownerName;
+            return read(ChestTable::ownerNameAt, Metadata::ownerName);
         }
 
-        public Inventory getInventory() {
+        /**
+         * Инвентарь сундука; при необходимости создаётся из сохранённых байтов
+         */
+        public synchronized Inventory getInventory() {
+            lastAccess = System.currentTimeMillis();
+            if (inventory != null) {
+                return inventory;
+            }
+
+            Component title = plugin.getChestManager().buildTitle(getOwnerName());
+            Inventory created = plugin.getServer().createInventory(new DeathChestHolder(this), size, title);
+            if (packed != null) {
+                created.setContents(unpack(packed));
+                packed = null;
+            }
+            inventory = created;
+            plugin.getChestManager().markMaterialized(this);
             return inventory;
         }
 
+        /**
+         * Копия содержимого без создания инвентаря
+         */
+        public synchronized ItemStack[] getContents() {
+            if (inventory != null) {
+                ItemStack[] contents = inventory.getContents();
+                for (int i = 0; i < contents.length; i++) {
+                    if (contents[i] != null) {
+                        contents[i] = contents[i].clone();
+                    }
+                }
+                return contents;
+            }
+            return packed != null ? unpack(packed) : new ItemStack[size];
+        }
+
+        /**
+         * Содержимое в упакованной форме ItemCodec. Байты неактивного сундука
+         * отдаются как есть, содержимое открытого инвентаря упаковывается заново.
+         */
+        public synchronized byte[] getPacked(boolean compress) {
+            if (packed != null) {
+                return packed;
+            }
+            try {
+                return ItemCodec.pack(inventory != null ? inventory.getContents() : new ItemStack[size], compress);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Задаёт содержимое ещё не открывавшегося сундука; байты не разбираются до создания инвентаря
+         */
+        synchronized void setPacked(byte[] contents) {
+            if (inventory != null) {
+                inventory.setContents(unpack(contents));
+                return;
+            }
+            packed = contents;
+        }
+
+        public synchronized boolean hasViewers() {
+            return inventory != null && !inventory.getViewers().isEmpty();
+        }
+
+        public synchronized List<HumanEntity> getViewers() {
+            return inventory == null ? List.of() : new ArrayList<>(inventory.getViewers());
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        /**
+         * Отмечает обращение к сундуку: отсчёт inventory-idle-seconds начинается заново
+         */
+        public void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * Превращает инвентарь обратно в байты, если его никто не смотрит и к нему
+         * не обращались idleMillis. Вызывается из потока региона сундука.
+         *
+         * @return true, если инвентаря больше нет в памяти
+         */
+        synchronized boolean dematerialize(long idleMillis, boolean compress) {
+            if (inventory == null) return true;
+
+            long now = System.currentTimeMillis();
+            if (!inventory.getViewers().isEmpty()) {
+                lastAccess = now;
+                return false;
+            }
+            if (now - lastAccess < idleMillis) return false;
+
+            try {
+                packed = ItemCodec.pack(inventory.getContents(), compress);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Не удалось упаковать содержимое сундука смерти: " + e.getMessage());
+                lastAccess = now;
+                return false;
+            }
+            inventory = null;
+            return true;
+        }
+
+        /**
+         * Освобождает содержимое выгруженного сундука: оно уже перенесено в запись, ждущую загрузки чанка
+         */
+        private synchronized void discardContents() {
+            inventory = null;
+            packed = null;
+        }
+
+        private static ItemStack[] unpack(byte[] packed) {
+            try {
+                return ItemCodec.unpack(packed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         public long getCreationTime() {
-            return creationTime;
+            return read(ChestTable::creationTimeAt, Metadata::creationTime);
         }
 
         public String getHologramId() {
-            return hologramId;
+            return read(ChestTable::hologramIdAt, Metadata::hologramId);
         }
 
         public void setHologramId(String id) {
-            this.hologramId = id;
+            long stamp = table.writeLock();
+            try {
+                if (row >= 0) {
+                    table.setHologramIdAt(row, id);
+                } else {
+                    detached = detached.withHologramId(id);
+                }
+            } finally {
+                table.unlockWrite(stamp);
+            }
         }
 
-        public Location getLocation() {
-            return location;
+        /**
+         * Мир сундука; у установленного сундука берётся из таблицы без поиска по серверу.
+         * null, если мир выгружен.
+         */
+        public World getWorld() {
+            return read(ChestTable::worldAt, m -> Bukkit.getWorld(m.worldId()));
         }
-    }
 
-    public static class InventoryTracker {
-        private final Inventory inventory;
-        private final Location location;
-        private final Set<UUID> viewers = new HashSet<>();
-
-        public InventoryTracker(Inventory inventory, Location location) {
-            this.inventory = inventory;
-            this.location = location;
+        /**
+         * Имя мира сундука; известно и для выгруженного мира
+         */
+        public String getWorldName() {
+            return read(ChestTable::worldNameAt, Metadata::worldName);
         }
 
-        public void addViewer(Player player) {
-            viewers.add(player.getUniqueId());
+        /**
+         * Координаты блока сундука, упакованные {@link BlockKey#pack}
+         */
+        public long getBlockKey() {
+            return read(ChestTable::blockAt, Metadata::blockKey);
         }
 
-        public void removeViewer(Player player) {
-            viewers.remove(player.getUniqueId());
+        /**
+         * Расположение сундука; каждый вызов возвращает новый объект. В частых проверках
+         * вместо него используются {@link #getWorld()} и {@link #getBlockKey()}.
+         */
+        public Location getLocation() {
+            long key = getBlockKey();
+            return new Location(getWorld(), BlockKey.x(key), BlockKey.y(key), BlockKey.z(key));
         }
+    }
 
-        public Inventory getInventory() {
-            return inventory;
+    /**
+     * Владелец инвентаря сундука смерти. По нему закрытие инвентаря определяется
+     * одной проверкой instanceof, без поиска среди открытых сундуков.
+     */
+    public static class DeathChestHolder implements InventoryHolder {
+        private final DeathChestData chest;
+
+        private DeathChestHolder(DeathChestData chest) {
+            this.chest = chest;
         }
 
-        public Location getLocation() {
-            return location;
+        public DeathChestData getChest() {
+            return chest;
         }
 
-        public Set<UUID> getViewers() {
-            return viewers;
+        @Override
+        public Inventory getInventory() {
+            return chest.getInventory();
         }
     }
 
+    /**
+     * Краткие сведения о сундуке для списка, безопасные для передачи в другой поток
+     */
+    public record ChestSummary(String world, int x, int y, int z, long creationTime) {
+    }
+
     public boolean createDeathChest(Player player, List<ItemStack> items, Location location) {
         try {
             Block block = location.getBlock();
@@ -170,8 +494,9 @@ public class ChestManager {
 
             block.setType(Material.CHEST);
 
+            Location blockLocation = block.getLocation();
             int size = Math.min(((items.size() + 8) / 9) * 9, 54);
-            DeathChestData deathChest = new DeathChestData(plugin, player.getUniqueId(), player.getName(), size, location);
+            DeathChestData deathChest = new DeathChestData(plugin, table, player.getUniqueId(), player.getName(), size, blockLocation);
 
             for (ItemStack item : items) {
                 if (item != null && item.getType() != Material.AIR) {
@@ -179,10 +504,15 @@ public class ChestManager {
                 }
             }
 
-            deathChests.put(block.getLocation(), deathChest);
+            synchronized (this) {
+                deathChests.put(blockLocation, deathChest);
+                deathChest.attach();
+                addOwned(deathChest);
+                scheduleExpiry(deathChest);
+            }
 
             if (plugin.getConfigManager().isHoloEnabled()) {
-                String hologramId = plugin.getHologramManager().createHologram(block.getLocation(), player.getName());
+                String hologramId = plugin.getHologramManager().createHologram(deathChest);
                 deathChest.setHologramId(hologramId);
             }
             saveDeathChest(deathChest);
@@ -195,70 +525,132 @@ public class ChestManager {
     }
 
     public boolean isSuitableForChest(Block block) {
-        Material type = block.getType();
+        return isSuitableForChest(block.getType());
+    }
+
+    public boolean isSuitableForChest(Material type) {
         return type.isAir() || SOFT_BLOCKS.contains(type);
     }
 
+    /**
+     * Ищет место для сундука вокруг точки смерти в пределах chest-creation.search-radius
+     */
+    public Location findChestLocation(Location deathLocation) {
+        return placementSearch.find(deathLocation, plugin.getConfigManager().getSearchRadius());
+    }
+
     public DeathChestData getDeathChest(Location location) {
         return deathChests.get(location);
     }
 
+    public DeathChestData getDeathChest(Block block) {
+        return deathChests.get(block);
+    }
+
     public boolean isDeathChest(Location location) {
-        return deathChests.containsKey(location);
+        return deathChests.contains(location);
     }
 
-    public boolean canAccessChest(Player player, DeathChestData chest) {
-        if (chest.getOwner().equals(player.getUniqueId())) {
-            return true;
-        }
-        return plugin.getConfigManager().allowAccessOthersChests();
+    public boolean isDeathChest(Block block) {
+        return deathChests.contains(block);
     }
 
-    public void registerOpenInventory(Player player, Inventory inventory, Location location) {
-        InventoryTracker tracker = openInventories.computeIfAbsent(location,
-                loc -> new InventoryTracker(inventory, location));
-        tracker.addViewer(player);
+    /**
+     * Обходит сундуки чанка. Действие выполняется вне блокировки, поэтому может обращаться к менеджеру.
+     */
+    public void forEachInChunk(World world, int chunkX, int chunkZ, Consumer<DeathChestData> action) {
+        deathChests.forEachInChunk(world, chunkX, chunkZ, action);
     }
 
-    public void unregisterOpenInventory(Player player, Inventory inventory) {
-        InventoryTracker tracker = openInventories.values().stream()
-                .filter(t -> t.getInventory().equals(inventory))
-                .findFirst()
-                .orElse(null);
+    /**
+     * Есть ли сундуки смерти в прямоугольнике чанков (границы включительно)
+     */
+    public boolean hasDeathChestsInChunks(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        if (deathChests.hasAnyInChunks(world, minChunkX, minChunkZ, maxChunkX, maxChunkZ)) {
+            return true;
+        }
+
+        Map<Long, List<ChestRecord>> pending = pendingChests.get(world.getName());
+        Map<Long, long[]> guard = reloadGuard.get(world.getName());
+        if (pending == null && guard == null) return false;
 
-        if (tracker != null) {
-            tracker.removeViewer(player);
-            if (tracker.getViewers().isEmpty()) {
-                openInventories.remove(tracker.getLocation());
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                long chunkKey = Chunk.getChunkKey(chunkX, chunkZ);
+                if (pending != null && pending.containsKey(chunkKey) || guard != null && guard.containsKey(chunkKey)) {
+                    return true;
+                }
             }
         }
+        return false;
     }
 
-    public boolean isInventoryOpen(Location location) {
-        return openInventories.containsKey(location);
-    }
+    /**
+     * Стоит ли на блоке сундук смерти, который ещё не в индексе: установка ждёт очереди
+     * или хранилище перечитывается после перезагрузки
+     */
+    public boolean isPendingChest(Block block) {
+        String world = block.getWorld().getName();
+        long chunkKey = Chunk.getChunkKey(block.getX() >> 4, block.getZ() >> 4);
+
+        Map<Long, List<ChestRecord>> pending = pendingChests.get(world);
+        if (pending != null) {
+            for (ChestRecord record : pending.getOrDefault(chunkKey, List.of())) {
+                if (record.x() == block.getX() && record.y() == block.getY() && record.z() == block.getZ()) {
+                    return true;
+                }
+            }
+        }
 
-    public void closeAllInventoriesForLocation(Location location) {
-        InventoryTracker tracker = openInventories.remove(location);
-        if (tracker != null) {
-            new ArrayList<>(tracker.getInventory().getViewers())
-                    .forEach(HumanEntity::closeInventory);
+        Map<Long, long[]> guard = reloadGuard.get(world);
+        long[] keys = guard == null ? null : guard.get(chunkKey);
+        if (keys != null) {
+            long key = BlockKey.pack(block.getX(), block.getY(), block.getZ());
+            for (long guarded : keys) {
+                if (guarded == key) return true;
+            }
         }
+        return false;
     }
 
-    public Location getLocationByInventory(Inventory inventory) {
-        for (InventoryTracker tracker : openInventories.values()) {
-            if (tracker.getInventory().equals(inventory)) {
-                return tracker.getLocation();
-            }
+    public boolean canAccessChest(Player player, DeathChestData chest) {
+        if (chest.getOwner().equals(player.getUniqueId())) {
+            return true;
         }
-        return null;
+        return plugin.getConfigManager().allowAccessOthersChests();
     }
 
+    /**
+     * Является ли сундук текущим (не удалённым и не заменённым) сундуком на своём месте
+     */
+    public boolean isActive(DeathChestData chest) {
+        return deathChests.get(chest.getWorld(), chest.getBlockKey()) == chest;
+    }
+
+    public boolean isInventoryOpen(DeathChestData chest) {
+        return chest.hasViewers();
+    }
+
+    public void closeAllInventories(DeathChestData chest) {
+        chest.getViewers().forEach(HumanEntity::closeInventory);
+    }
+
+    /**
+     * Удаляет сундук; вызывается из потока региона, которому принадлежит location
+     */
     public void removeDeathChest(Location location) {
-        DeathChestData chest = deathChests.remove(location);
+        DeathChestData chest;
+        synchronized (this) {
+            chest = deathChests.remove(location);
+            if (chest != null) {
+                chest.detach();
+                removeOwned(chest);
+                materialized.remove(chest);
+            }
+        }
+
         if (chest != null) {
-            closeAllInventoriesForLocation(location);
+            closeAllInventories(chest);
 
             location.getBlock().setType(Material.AIR);
 
@@ -275,166 +667,537 @@ public class ChestManager {
     }
 
     private void saveDeathChest(DeathChestData chest) {
-        FileConfiguration config = YamlConfiguration.loadConfiguration(chestsFile);
-
-        String key = getLocationKey(chest.getLocation());
+        storage.save(snapshot(chest));
+    }
 
-        config.set(key + ".owner", chest.getOwner().toString());
-        config.set(key + ".ownerName", chest.getOwnerName());
-        config.set(key + ".creationTime", chest.getCreationTime());
-        config.set(key + ".items", Arrays.stream(chest.getInventory().getContents()).filter(Objects::nonNull).toList());
-        config.set(key + ".hologramId", chest.getHologramId());
+    /**
+     * Идентификатор голограммы в запись не попадает: ни TextDisplay, ни голограммы
+     * DecentHolograms (создаются без сохранения в файл) не переживают перезапуск,
+     * а при загрузке чанка или перезагрузке голограмма создаётся заново.
+     * Иначе каждая новая голограмма переписывала бы запись сундука целиком.
+     */
+    private ChestRecord snapshot(DeathChestData chest) {
+        Location location = chest.getLocation();
+        // Хранилище пишет несжатую форму, поэтому открытый инвентарь не сжимается лишний раз
+        byte[] contents = chest.getPacked(false);
+
+        return new ChestRecord(location.getWorld().getName(),
+                location.getBlockX(), location.getBlockY(), location.getBlockZ(),
+                chest.getOwner(), chest.getOwnerName(), chest.getCreationTime(),
+                null, contents);
+    }
 
-        try {
-            config.save(chestsFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Не удалось сохранить сундук смерти: " + e.getMessage());
-        }
+    /**
+     * Запись без содержимого для сундука, ждущего загрузки чанка
+     */
+    private ChestRecord parked(DeathChestData chest) {
+        long key = chest.getBlockKey();
+        return new ChestRecord(chest.getWorld().getName(), BlockKey.x(key), BlockKey.y(key), BlockKey.z(key),
+                chest.getOwner(), chest.getOwnerName(), chest.getCreationTime(), null, null);
     }
 
     private void removeDeathChestFromFile(Location location) {
-        if (!chestsFile.exists()) return;
-
-        FileConfiguration config = YamlConfiguration.loadConfiguration(chestsFile);
-        String key = getLocationKey(location);
-
-        config.set(key, null);
-
-        try {
-            config.save(chestsFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Не удалось удалить сундук смерти из файла: " + e.getMessage());
-        }
+        storage.remove(getLocationKey(location));
     }
 
     private String getLocationKey(Location location) {
-        return location.getWorld().getName() + ";" + location.getBlockX() + ";" + location.getBlockY() + ";" + location.getBlockZ();
+        return ChestRecord.key(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
     }
 
+    /**
+     * Читает сундуки из хранилища в две фазы. Чтение файла и разбор предметов идут
+     * вне основного потока, после чего записи раскладываются по индексам в глобальном потоке.
+     * Сундуки в загруженных чанках устанавливаются планировщиком с бюджетом на тик
+     * и становятся доступны по мере установки; остальные остаются лёгкими записями
+     * до загрузки своего чанка.
+     */
     public void loadChests() {
-        if (!chestsFile.exists()) return;
+        long generation = loadGeneration.incrementAndGet();
 
-        FileConfiguration config = YamlConfiguration.loadConfiguration(chestsFile);
-        deathChests.clear();
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            long start = System.nanoTime();
+            List<ChestRecord> records = storage.load();
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
 
-        for (String key : config.getKeys(false)) {
-            try {
-                String[] parts = key.split(";");
-                if (parts.length != 4) continue;
+            plugin.getServer().getGlobalRegionScheduler().execute(plugin,
+                    () -> applyLoaded(generation, records, elapsedMillis));
+        });
+    }
 
-                String world = parts[0];
-                int x = Integer.parseInt(parts[1]);
-                int y = Integer.parseInt(parts[2]);
-                int z = Integer.parseInt(parts[3]);
+    private void applyLoaded(long generation, List<ChestRecord> records, long readMillis) {
+        Map<World, Map<Long, Integer>> loadedChunks = new HashMap<>();
 
-                Location loc = new Location(plugin.getServer().getWorld(world), x, y, z);
+        synchronized (this) {
+            // Сундуки отключили или перезагрузили, пока шло чтение
+            if (generation != loadGeneration.get()) return;
+            // Дальше блоки защищают сами записи
+            reloadGuard = Map.of();
 
-                Block block = loc.getBlock();
-                if (block.getType() != Material.CHEST) {
-                    block.setType(Material.CHEST);
+            for (ChestRecord record : records) {
+                // Сундук, созданный на этом месте за время чтения, новее записи
+                World world = plugin.getServer().getWorld(record.world());
+                if (world != null && deathChests.get(world, record.x(), record.y(), record.z()) != null) {
+                    continue;
                 }
 
-                UUID owner = UUID.fromString(config.getString(key + ".owner"));
-                String ownerName = config.getString(key + ".ownerName");
-                long creationTime = config.getLong(key + ".creationTime");
-                String hologramId = config.getString(key + ".hologramId", null);
+                addPending(record);
+            }
 
-                List<ItemStack> items = (List<ItemStack>) config.getList(key + ".items");
-                if (items == null) continue;
+            for (World world : plugin.getServer().getWorlds()) {
+                Map<Long, List<ChestRecord>> chunks = pendingChests.get(world.getName());
+                if (chunks == null) continue;
 
-                List<ItemStack> clonedItems = new ArrayList<>();
-                for (ItemStack item : items) {
-                    if (item != null) {
-                        clonedItems.add(item.clone());
-                    } else {
-                        clonedItems.add(null);
-                    }
+                for (Map.Entry<Long, List<ChestRecord>> entry : chunks.entrySet()) {
+                    loadedChunks.computeIfAbsent(world, w -> new HashMap<>()).put(entry.getKey(), entry.getValue().size());
                 }
+            }
+        }
+        int loadedChunkChests = 0;
+        for (Map.Entry<World, Map<Long, Integer>> worldEntry : loadedChunks.entrySet()) {
+            World world = worldEntry.getKey();
+            for (Map.Entry<Long, Integer> entry : worldEntry.getValue().entrySet()) {
+                long chunkKey = entry.getKey();
+                int chunkX = (int) chunkKey;
+                int chunkZ = (int) (chunkKey >> 32);
+                if (!world.isChunkLoaded(chunkX, chunkZ)) continue;
+
+                loadedChunkChests += entry.getValue();
+                // Чанк мог выгрузиться, пока задача ждала своей очереди — тогда он установится при загрузке
+                workScheduler.submit(world, chunkX, chunkZ, () -> {
+                    if (world.isChunkLoaded(chunkX, chunkZ)) {
+                        installChunk(world, chunkKey);
+                    }
+                });
+            }
+        }
 
-                int size = Math.min(((clonedItems.size() + 8) / 9) * 9, 54);
-                DeathChestData chest = new DeathChestData(plugin, owner, ownerName, size, hologramId, loc, creationTime);
+        plugin.getLogger().info("Загружено " + records.size() + " сундуков смерти за " + readMillis
+                + " мс, из них в загруженных чанках: " + loadedChunkChests);
+    }
 
-                chest.getInventory().setContents(clonedItems.toArray(new ItemStack[0]));
-                deathChests.put(loc, chest);
-                if (plugin.getConfigManager().isHoloEnabled()) {
-                    if (chest.getHologramId() == null || DHAPI.getHologram(chest.getHologramId()) == null) {
-                        String newHologramId = plugin.getHologramManager().createHologram(loc, ownerName);
-                        chest.setHologramId(newHologramId);
-                        saveDeathChest(chest);
-                    }
+    public void onChunkLoad(Chunk chunk) {
+        installChunk(chunk.getWorld(), chunk.getChunkKey());
+        // Сундуки, чей чанк выгрузился раньше, чем до них дошла очередь голограмм
+        forEachInChunk(chunk.getWorld(), chunk.getX(), chunk.getZ(),
+                plugin.getHologramManager()::requestHologram);
+    }
+
+    /**
+     * Сундуки выгружаемого чанка возвращаются в лёгкие записи, как до первой загрузки чанка:
+     * инвентарь, голограмма и ссылка на мир освобождаются, при загрузке чанка сундуки
+     * устанавливаются заново. Хранилище уже содержит актуальное содержимое, оно
+     * сохраняется при каждом закрытии инвентаря.
+     */
+    public void onChunkUnload(Chunk chunk) {
+        List<DeathChestData> chests;
+        synchronized (this) {
+            if (!deathChests.hasChunk(chunk.getWorld(), chunk.getX(), chunk.getZ())) return;
+            chests = new ArrayList<>(2);
+            deathChests.forEachInChunk(chunk.getWorld(), chunk.getX(), chunk.getZ(), chests::add);
+        }
+        evict(chests, false);
+    }
+
+    /**
+     * Выгрузка мира освобождает все его сундуки; при новой загрузке мира
+     * они установятся вместе с его чанками
+     */
+    public void onWorldUnload(World world) {
+        List<DeathChestData> chests = new ArrayList<>();
+        synchronized (this) {
+            deathChests.forEachInWorld(world, chests::add);
+        }
+        if (chests.isEmpty()) return;
+
+        evict(chests, true);
+        plugin.getLogger().info("Мир " + world.getName() + " выгружен, сундуков смерти отложено: " + chests.size());
+    }
+
+    private void evict(List<DeathChestData> chests, boolean purgeExpiry) {
+        // Закрытие инвентаря сохраняет содержимое, поэтому ждущая запись хранит только метаданные:
+        // память не растёт с числом выгруженных сундуков, содержимое прочитается при загрузке чанка
+        List<ChestRecord> records = new ArrayList<>(chests.size());
+        for (DeathChestData chest : chests) {
+            closeAllInventories(chest);
+            records.add(parked(chest));
+        }
+
+        List<DeathChestData> evicted = new ArrayList<>(chests.size());
+        synchronized (this) {
+            for (int i = 0; i < chests.size(); i++) {
+                DeathChestData chest = chests.get(i);
+                // Сундук могли удалить, пока снимались записи
+                Location location = chest.getLocation();
+                if (deathChests.get(location) != chest) continue;
+
+                deathChests.remove(location);
+                chest.detach();
+                removeOwned(chest);
+                materialized.remove(chest);
+                addPending(records.get(i));
+                evicted.add(chest);
+                staleExpiryEntries++;
+            }
+
+            // Записи выгруженных сундуков остаются в очереди сроков до срока. Выгрузка мира
+            // чистит очередь сразу, а отдельные чанки — когда таких записей становится больше половины
+            if (purgeExpiry || staleExpiryEntries > STALE_EXPIRY_MIN && staleExpiryEntries * 2 > expiryQueue.size()) {
+                expiryQueue.removeIf(chest -> deathChests.get(chest.getWorld(), chest.getBlockKey()) != chest);
+                staleExpiryEntries = 0;
+            }
+        }
+
+        for (DeathChestData chest : evicted) {
+            chest.discardContents();
+            if (chest.getHologramId() != null) {
+                plugin.getHologramManager().removeHologram(chest.getHologramId());
+            }
+        }
+    }
+
+    /**
+     * Запрашивает у хранилища содержимое ждущих сундуков чанка и устанавливает их в потоке
+     * региона, когда оно прочитано. До установки блоки защищены как ждущие.
+     */
+    private void installChunk(World world, long chunkKey) {
+        List<String> keys = new ArrayList<>();
+        synchronized (this) {
+            Map<Long, List<ChestRecord>> chunks = pendingChests.get(world.getName());
+            List<ChestRecord> records = chunks == null ? null : chunks.get(chunkKey);
+            if (records == null) return;
+
+            records.forEach(record -> keys.add(record.key()));
+        }
+
+        int chunkX = (int) chunkKey;
+        int chunkZ = (int) (chunkKey >> 32);
+        storage.loadContents(keys).whenComplete((contents, error) -> {
+            if (error != null) {
+                // Записи остаются ждущими и установятся при следующей загрузке чанка
+                plugin.getLogger().warning("Не удалось прочитать содержимое сундуков смерти в чанке "
+                        + world.getName() + " " + chunkX + ", " + chunkZ + ": " + error.getMessage());
+                return;
+            }
+            workScheduler.submit(world, chunkX, chunkZ, () -> {
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    installChunk(world, chunkKey, keys, contents);
+                }
+            });
+        });
+    }
+
+    private void installChunk(World world, long chunkKey, List<String> keys, Map<String, byte[]> contents) {
+        Set<String> requested = new HashSet<>(keys);
+        List<ChestRecord> records = new ArrayList<>();
+        boolean remaining;
+        synchronized (this) {
+            Map<Long, List<ChestRecord>> chunks = pendingChests.get(world.getName());
+            List<ChestRecord> pending = chunks == null ? null : chunks.get(chunkKey);
+            if (pending == null) return;
+
+            // Запись уже установил другой запрос или её отложили заново после запроса — такие не трогаем
+            List<ChestRecord> left = new ArrayList<>();
+            for (ChestRecord record : pending) {
+                (requested.contains(record.key()) ? records : left).add(record);
+            }
+            remaining = !left.isEmpty();
+            if (remaining) {
+                chunks.put(chunkKey, List.copyOf(left));
+            } else {
+                chunks.remove(chunkKey);
+                if (chunks.isEmpty()) {
+                    pendingChests.remove(world.getName());
                 }
+            }
+            records.forEach(this::removePending);
+        }
 
-            } catch (Exception e) {
-                plugin.getLogger().warning("Ошибка при загрузке сундука смерти: " + key + " - " + e.getMessage());
+        for (ChestRecord record : records) {
+            byte[] packed = contents.get(record.key());
+            if (packed == null) {
+                plugin.getLogger().warning("Содержимое сундука смерти не найдено в хранилище: " + record.key());
+                continue;
             }
+            installChest(world, record, packed);
         }
 
-        plugin.getLogger().info("Загружено " + deathChests.size() + " сундуков смерти");
+        if (remaining) {
+            installChunk(world, chunkKey);
+        }
     }
 
-    public Map<Location, DeathChestData> getDeathChests() {
-        return Collections.unmodifiableMap(deathChests);
+    private void installChest(World world, ChestRecord record, byte[] contents) {
+
+        try {
+            Location loc = new Location(world, record.x(), record.y(), record.z());
+            Block block = loc.getBlock();
+
+            if (isExpired(record.creationTime())) {
+                if (block.getType() == Material.CHEST) {
+                    block.setType(Material.AIR);
+                }
+                storage.remove(record.key());
+                plugin.getHologramManager().removeHologram(record.hologramId());
+                return;
+            }
+
+            if (block.getType() != Material.CHEST) {
+                block.setType(Material.CHEST);
+            }
+
+            int size = Math.min(((ItemCodec.slots(contents) + 8) / 9) * 9, 54);
+            DeathChestData chest = new DeathChestData(plugin, table, record.owner(), record.ownerName(), size,
+                    record.hologramId(), loc, record.creationTime());
+
+            chest.setPacked(contents);
+            synchronized (this) {
+                deathChests.put(loc, chest);
+                chest.attach();
+                addOwned(chest);
+                scheduleExpiry(chest);
+            }
+            plugin.getHologramManager().requestHologram(chest);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Ошибка при загрузке сундука смерти: " + record.key() + " - " + e.getMessage());
+        }
     }
 
-    public void cleanupExpiredChests() {
+    private boolean isExpired(long creationTime) {
         int expirationTime = plugin.getConfigManager().getExpirationTime();
-        if (expirationTime <= 0) return;
+        if (expirationTime <= 0) return false;
 
-        long currentTime = System.currentTimeMillis();
-        long expirationMillis = expirationTime * 60 * 1000L;
+        return System.currentTimeMillis() - creationTime > expirationTime * 60 * 1000L;
+    }
 
-        Iterator<Map.Entry<Location, DeathChestData>> iterator = deathChests.entrySet().iterator();
-        int removedCount = 0;
 
-        while (iterator.hasNext()) {
-            Map.Entry<Location, DeathChestData> entry = iterator.next();
-            DeathChestData chest = entry.getValue();
+    /**
+     * Позиции всех известных сундуков: мир -> ключ чанка -> упакованные ключи блоков
+     */
+    private synchronized Map<String, Map<Long, long[]>> captureReloadGuard() {
+        Map<String, Map<Long, List<Long>>> positions = new HashMap<>();
+        deathChests.forEach(chest -> {
+            Location location = chest.getLocation();
+            addGuarded(positions, location.getWorld().getName(),
+                    location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        });
+        pendingChests.values().forEach(chunks -> chunks.values().forEach(records -> records.forEach(record ->
+                addGuarded(positions, record.world(), record.x(), record.y(), record.z()))));
+
+        Map<String, Map<Long, long[]>> guard = new HashMap<>();
+        positions.forEach((world, chunks) -> {
+            Map<Long, long[]> packed = new HashMap<>();
+            chunks.forEach((chunkKey, keys) -> packed.put(chunkKey, keys.stream().mapToLong(Long::longValue).toArray()));
+            guard.put(world, packed);
+        });
+        return guard;
+    }
 
-            if (currentTime - chest.getCreationTime() > expirationMillis) {
-                Location loc = entry.getKey();
+    private static void addGuarded(Map<String, Map<Long, List<Long>>> positions, String world, int x, int y, int z) {
+        positions.computeIfAbsent(world, name -> new HashMap<>())
+                .computeIfAbsent(Chunk.getChunkKey(x >> 4, z >> 4), key -> new ArrayList<>())
+                .add(BlockKey.pack(x, y, z));
+    }
 
-                if (isInventoryOpen(loc)) {
-                    continue;
-                }
+    private void addPending(ChestRecord record) {
+        pendingByOwner.computeIfAbsent(record.owner(), owner -> new ArrayList<>()).add(record);
 
-                loc.getBlock().setType(Material.AIR);
-                iterator.remove();
+        Map<Long, List<ChestRecord>> chunks = pendingChests.computeIfAbsent(record.world(), name -> new ConcurrentHashMap<>());
+        long chunkKey = Chunk.getChunkKey(record.x() >> 4, record.z() >> 4);
+        List<ChestRecord> records = new ArrayList<>(chunks.getOrDefault(chunkKey, List.of()));
+        records.add(record);
+        chunks.put(chunkKey, List.copyOf(records));
+    }
 
-                removeDeathChestFromFile(loc);
+    private void addOwned(DeathChestData chest) {
+        chestsByOwner.computeIfAbsent(chest.getOwner(), owner -> new HashSet<>()).add(chest);
+    }
 
-                if (chest.getHologramId() != null) {
-                    plugin.getHologramManager().removeHologram(chest.getHologramId());
-                }
+    private void removeOwned(DeathChestData chest) {
+        Set<DeathChestData> owned = chestsByOwner.get(chest.getOwner());
+        if (owned != null && owned.remove(chest) && owned.isEmpty()) {
+            chestsByOwner.remove(chest.getOwner());
+        }
+    }
+
+    private void removePending(ChestRecord record) {
+        List<ChestRecord> pending = pendingByOwner.get(record.owner());
+        if (pending != null && pending.remove(record) && pending.isEmpty()) {
+            pendingByOwner.remove(record.owner());
+        }
+    }
+
+    /**
+     * Все сундуки игрока, включая ещё не установленные, от старых к новым.
+     * Затрагивает только сундуки этого игрока.
+     */
+    public synchronized List<ChestSummary> getOwnerChests(UUID owner) {
+        List<ChestSummary> result = new ArrayList<>();
+
+        for (DeathChestData chest : chestsByOwner.getOrDefault(owner, Set.of())) {
+            long block = chest.getBlockKey();
+            result.add(new ChestSummary(chest.getWorldName(), BlockKey.x(block), BlockKey.y(block),
+                    BlockKey.z(block), chest.getCreationTime()));
+        }
+
+        for (ChestRecord record : pendingByOwner.getOrDefault(owner, List.of())) {
+            result.add(new ChestSummary(record.world(), record.x(), record.y(), record.z(), record.creationTime()));
+        }
+
+        result.sort(Comparator.comparingLong(ChestSummary::creationTime));
+        return result;
+    }
 
-                removedCount++;
+    public synchronized List<DeathChestData> getDeathChests() {
+        return deathChests.values();
+    }
+
+    /**
+     * Отправляет на удаление сундуки, срок которых уже наступил. Просматриваются только они,
+     * а не все сундуки. Само удаление выполняется планировщиком с бюджетом на тик.
+     */
+    public void cleanupExpiredChests() {
+        int expired = expiredCount.getAndSet(0);
+        if (expired > 0) {
+            plugin.getLogger().info("Удалено " + expired + " просроченных сундуков смерти");
+        }
+
+        long currentTime = System.currentTimeMillis();
+        List<DeathChestData> due = new ArrayList<>();
+        synchronized (this) {
+            DeathChestData chest;
+            while ((chest = expiryQueue.pollDue(currentTime)) != null) {
+                due.add(chest);
             }
         }
 
-        if (removedCount > 0) {
-            plugin.getLogger().info("Удалено " + removedCount + " просроченных сундуков смерти");
+        for (DeathChestData chest : due) {
+            workScheduler.submit(chest.getWorld(), chest.getBlockKey(), () -> expireChest(chest));
+        }
+    }
+
+    /**
+     * Открытые сейчас сундуки откладываются на EXPIRY_RETRY_MILLIS
+     */
+    private void expireChest(DeathChestData chest) {
+        if (!isActive(chest)) {
+            return;
+        }
+
+        if (isInventoryOpen(chest)) {
+            synchronized (this) {
+                expiryQueue.schedule(chest, System.currentTimeMillis() + EXPIRY_RETRY_MILLIS);
+            }
+            return;
         }
+
+        removeDeathChest(chest.getLocation());
+        expiredCount.incrementAndGet();
+    }
+
+    private void scheduleExpiry(DeathChestData chest) {
+        int expirationTime = plugin.getConfigManager().getExpirationTime();
+        if (expirationTime <= 0) return;
+
+        expiryQueue.schedule(chest, chest.getCreationTime() + expirationTime * 60 * 1000L);
     }
 
     public void runScheduledTasks() {
         cleanupExpiredChests();
+        packIdleInventories();
+    }
+
+    /**
+     * Удалённый сундук может попасть сюда из старого обработчика — упаковка просто уберёт его из набора
+     */
+    synchronized void markMaterialized(DeathChestData chest) {
+        materialized.add(chest);
+    }
+
+    /**
+     * Возвращает в байты инвентари, которые давно закрыты. Проверяются только
+     * сундуки с созданным инвентарём, а упаковка идёт в потоке региона сундука.
+     */
+    private void packIdleInventories() {
+        int idleSeconds = plugin.getConfigManager().getInventoryIdleSeconds();
+        if (idleSeconds <= 0) return;
+
+        long idleMillis = idleSeconds * 1000L;
+        boolean compress = plugin.getConfigManager().isCompressInventories();
+        long now = System.currentTimeMillis();
+
+        List<DeathChestData> idle = new ArrayList<>();
+        synchronized (this) {
+            if (materialized.isEmpty()) return;
+            for (DeathChestData chest : materialized) {
+                if (now - chest.getLastAccess() >= idleMillis) {
+                    idle.add(chest);
+                }
+            }
+        }
+
+        for (DeathChestData chest : idle) {
+            workScheduler.submit(chest.getWorld(), chest.getBlockKey(), () -> {
+                if (chest.dematerialize(idleMillis, compress)) {
+                    synchronized (this) {
+                        materialized.remove(chest);
+                    }
+                }
+            });
+        }
     }
 
     public void disableChests() {
         plugin.getLogger().info("Отключение сундуков смерти...");
+        plugin.getHologramManager().cancelPending();
+
+        List<DeathChestData> chests;
+        synchronized (this) {
+            loadGeneration.incrementAndGet();
+            chests = deathChests.values();
+            deathChests.clear();
+            chests.forEach(DeathChestData::detach);
+            pendingChests.clear();
+            expiryQueue.clear();
+            staleExpiryEntries = 0;
+            chestsByOwner.clear();
+            pendingByOwner.clear();
+            materialized.clear();
+        }
 
-        for (DeathChestData data : deathChests.values()) {
+        for (DeathChestData data : chests) {
             if (data.getHologramId() != null) {
-                plugin.getHologramManager().removeHologram(data.getHologramId());
+                workScheduler.submit(data.getWorld(), data.getBlockKey(), () -> removeUnusedHologram(data));
             }
         }
 
-        deathChests.clear();
-
         plugin.getLogger().info("Сундуки смерти успешно отключены.");
     }
 
+    /**
+     * Удаляет голограмму отключённого сундука, если её не подхватил уже заново установленный сундук
+     */
+    private void removeUnusedHologram(DeathChestData chest) {
+        DeathChestData current = getDeathChest(chest.getLocation());
+        if (current != null && chest.getHologramId().equals(current.getHologramId())) {
+            return;
+        }
+        plugin.getHologramManager().removeHologram(chest.getHologramId());
+    }
+
+    /**
+     * Дописывает отложенные изменения на диск и останавливает поток сохранения
+     */
+    public void shutdown() {
+        storage.close();
+    }
+
     public void reloadChests() {
+        Map<String, Map<Long, long[]>> guard = captureReloadGuard();
         disableChests();
+        synchronized (this) {
+            reloadGuard = guard;
+        }
+        titleTemplate = MessageTemplate.compile(plugin.getConfigManager().getChestTitle());
         loadChests();
         plugin.getLogger().info("Перезагрузка сундуков смерти завершена.");
     }
@@ -1,90 +1,233 @@
 package com.flyaway.deathchest.managers;
 
+import com.flyaway.deathchest.filter.DropFilter;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
 
 public class ConfigManager {
 
     private final JavaPlugin plugin;
-    private FileConfiguration config;
+    // Публикуется целиком при загрузке/перезагрузке, читатели всегда видят согласованный снимок
+    private volatile Settings settings;
 
     public ConfigManager(JavaPlugin plugin) {
         this.plugin = plugin;
     }
 
+    /**
+     * Разобранная конфигурация. Обработчики событий читают готовые поля,
+     * а не обходят YAML при каждом вызове.
+     */
+    public record Settings(boolean mobDeathOnly,
+                           Set<String> allowedWorlds,
+                           Set<String> blacklistedWorlds,
+                           int searchRadius,
+                           DropFilter dropFilter,
+                           boolean allowAccessOthersChests,
+                           boolean playerBreakable,
+                           boolean explosionProof,
+                           boolean dropItemsWhenExploded,
+                           boolean dropItemsWhenBroken,
+                           boolean removeEmptyChests,
+                           boolean holoEnabled,
+                           String hologramType,
+                           double hologramViewDistance,
+                           int hologramVisibilityInterval,
+                           List<String> holoLines,
+                           String chestTitle,
+                           int expirationTime,
+                           double tickBudgetMillis,
+                           int hologramsPerTick,
+                           int inventoryIdleSeconds,
+                           boolean compressInventories,
+                           String storageType,
+                           Map<String, String> timeAgo,
+                           Map<String, String> messages,
+                           String prefix) {
+
+        public boolean isWorldAllowed(String worldName) {
+            if (!allowedWorlds.isEmpty() && !allowedWorlds.contains(worldName)) {
+                return false;
+            }
+            return !blacklistedWorlds.contains(worldName);
+        }
+    }
+
     public void loadConfig() {
         plugin.saveDefaultConfig();
-        this.config = plugin.getConfig();
+        this.settings = compile(plugin.getConfig(), plugin.getLogger());
     }
 
     public void reloadConfig() {
         plugin.reloadConfig();
-        this.config = plugin.getConfig();
+        this.settings = compile(plugin.getConfig(), plugin.getLogger());
+    }
+
+    private static Settings compile(FileConfiguration config, Logger logger) {
+        return new Settings(
+                config.getBoolean("chest-creation.mob-death-only", false),
+                Set.copyOf(config.getStringList("chest-creation.allowed-worlds")),
+                Set.copyOf(config.getStringList("chest-creation.blacklisted-worlds")),
+                config.getInt("chest-creation.search-radius", 3),
+                DropFilter.compile(config.getConfigurationSection("drop-filter"), logger),
+                config.getBoolean("chest-interactions.allow-access-others-chests", false),
+                config.getBoolean("chest-interactions.player-breakable", false),
+                config.getBoolean("chest-interactions.explosion-proof", true),
+                config.getBoolean("chest-interactions.items-drop-when-exploded", true),
+                config.getBoolean("chest-interactions.items-drop-when-broken", true),
+                config.getBoolean("chest-interactions.remove-empty-chests", true),
+                config.getBoolean("chest-appearance.hologram-enabled", true),
+                config.getString("chest-appearance.hologram-type", defaultHologramType()),
+                config.getDouble("chest-appearance.hologram-view-distance", 48.0),
+                Math.max(1, config.getInt("performance.hologram-visibility-interval", 10)),
+                List.copyOf(config.getStringList("chest-appearance.hologram")),
+                config.getString("chest-appearance.title", "Сундук смерти: {player}"),
+                config.getInt("chest-appearance.expiration-time", 0),
+                config.getDouble("performance.tick-budget-ms", 5.0),
+                Math.max(1, config.getInt("performance.holograms-per-tick", 10)),
+                config.getInt("performance.inventory-idle-seconds", 300),
+                config.getBoolean("performance.compress-inventories", true),
+                config.getString("storage.type", "log"),
+                readStrings(config.getConfigurationSection("time-ago")),
+                readStrings(config.getConfigurationSection("messages")),
+                config.getString("prefix", "<gradient:gold:white>[DeathChest]</gradient>")
+        );
+    }
+
+    /**
+     * Без hologram-type в конфиге старые установки с DecentHolograms остаются на нём:
+     * их строки голограмм написаны в формате DecentHolograms
+     */
+    private static String defaultHologramType() {
+        return Bukkit.getPluginManager().getPlugin("DecentHolograms") != null ? "decentholograms" : "text-display";
+    }
+
+    private static Map<String, String> readStrings(ConfigurationSection section) {
+        if (section == null) return Map.of();
+
+        Map<String, String> values = new HashMap<>();
+        for (String key : section.getKeys(false)) {
+            Object value = section.get(key);
+            if (value != null && !(value instanceof ConfigurationSection)) {
+                values.put(key, value.toString());
+            }
+        }
+        return Map.copyOf(values);
     }
 
     public boolean isMobDeathOnly() {
-        return config.getBoolean("chest-creation.mob-death-only", false);
+        return settings.mobDeathOnly();
+    }
+
+    public Set<String> getAllowedWorlds() {
+        return settings.allowedWorlds();
+    }
+
+    public Set<String> getBlacklistedWorlds() {
+        return settings.blacklistedWorlds();
     }
 
-    public List<String> getAllowedWorlds() {
-        return config.getStringList("chest-creation.allowed-worlds");
+    public boolean isWorldAllowed(String worldName) {
+        return settings.isWorldAllowed(worldName);
     }
 
-    public List<String> getBlacklistedWorlds() {
-        return config.getStringList("chest-creation.blacklisted-worlds");
+    public int getSearchRadius() {
+        return settings.searchRadius();
+    }
+
+    public DropFilter getDropFilter() {
+        return settings.dropFilter();
     }
 
     public boolean allowAccessOthersChests() {
-        return config.getBoolean("chest-interactions.allow-access-others-chests", false);
+        return settings.allowAccessOthersChests();
     }
 
     public boolean isPlayerBreakable() {
-        return config.getBoolean("chest-interactions.player-breakable", false);
+        return settings.playerBreakable();
     }
 
     public boolean isExplosionProof() {
-        return config.getBoolean("chest-interactions.explosion-proof", true);
+        return settings.explosionProof();
     }
 
     public boolean dropItemsWhenExploded() {
-        return config.getBoolean("chest-interactions.items-drop-when-exploded", true);
+        return settings.dropItemsWhenExploded();
     }
 
     public boolean dropItemsWhenBroken() {
-        return config.getBoolean("chest-interactions.items-drop-when-broken", true);
+        return settings.dropItemsWhenBroken();
     }
 
     public boolean removeEmptyChests() {
-        return config.getBoolean("chest-interactions.remove-empty-chests", true);
+        return settings.removeEmptyChests();
     }
 
     public boolean isHoloEnabled() {
-        return config.getBoolean("chest-appearance.hologram-enabled", true);
+        return settings.holoEnabled();
+    }
+
+    public String getHologramType() {
+        return settings.hologramType();
+    }
+
+    public double getHologramViewDistance() {
+        return settings.hologramViewDistance();
+    }
+
+    public int getHologramVisibilityInterval() {
+        return settings.hologramVisibilityInterval();
     }
 
     public List<String> getHoloLines() {
-        return config.getStringList("chest-appearance.hologram");
+        return settings.holoLines();
     }
 
     public String getChestTitle() {
-        return config.getString("chest-appearance.title", "Сундук смерти: {player}");
+        return settings.chestTitle();
     }
 
     public String getTimeAgo(String key) {
-        return config.getString("time-ago" + key, key);
+        return settings.timeAgo().getOrDefault(key, key);
     }
 
     public int getExpirationTime() {
-        return config.getInt("chest-appearance.expiration-time", 0);
+        return settings.expirationTime();
+    }
+
+    public double getTickBudgetMillis() {
+        return settings.tickBudgetMillis();
+    }
+
+    public int getHologramsPerTick() {
+        return settings.hologramsPerTick();
+    }
+
+    public int getInventoryIdleSeconds() {
+        return settings.inventoryIdleSeconds();
+    }
+
+    public boolean isCompressInventories() {
+        return settings.compressInventories();
+    }
+
+    public String getStorageType() {
+        return settings.storageType();
     }
 
     public String getMessage(String path, String def) {
-        return config.getString("messages." + path, def);
+        return settings.messages().getOrDefault(path, def);
     }
 
     public String getPrefix() {
-        return config.getString("prefix", "<gradient:gold:white>[DeathChest]</gradient>");
+        return settings.prefix();
     }
 }
@@ -1,131 +1,415 @@
 package com.flyaway.deathchest.managers;
 
 import com.flyaway.deathchest.DeathChest;
-import eu.decentsoftware.holograms.api.DHAPI;
-import eu.decentsoftware.holograms.api.holograms.Hologram;
+import com.flyaway.deathchest.hologram.DecentHologramsBackend;
+import com.flyaway.deathchest.hologram.HologramBackend;
+import com.flyaway.deathchest.hologram.TextDisplayBackend;
+import com.flyaway.deathchest.index.BlockKey;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
 
-import java.util.List;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HologramManager {
 
     private final DeathChest plugin;
-    private boolean enabled;
+    private volatile HologramBackend backend;
+    private final Set<ChestManager.DeathChestData> pending = new LinkedHashSet<>();
+    private ScheduledTask pendingTask;
+
+    private static final long TEXT_UPDATE_PERIOD_TICKS = 20L * 60;
+
+    // Последние отправленные строки каждой голограммы, чтобы не обновлять неизменившийся текст
+    private final Map<String, List<String>> renderedLines = new ConcurrentHashMap<>();
+    private ScheduledTask textUpdateTask;
+
+    // Какие голограммы сейчас показаны каждому игроку, если дальность видимости ограничена
+    // Голограммы, показанные игроку, вместе с сундуками: по сундуку находится регион, в котором их скрывать
+    private final Map<UUID, Map<String, ChestManager.DeathChestData>> visibleHolograms = new ConcurrentHashMap<>();
+    private ScheduledTask visibilityTask;
+    private List<Player> visibilityCycle = List.of();
+    private int visibilityCursor;
 
     public HologramManager(DeathChest plugin) {
         this.plugin = plugin;
-        checkDependency();
+        this.backend = selectBackend();
+        startVisibilityTask();
+        startTextUpdateTask();
+    }
+
+    /**
+     * Выбирает способ отображения по chest-appearance.hologram-type.
+     * DecentHolograms используется, только если он установлен, иначе — TextDisplay.
+     */
+    private HologramBackend selectBackend() {
+        HologramBackend selected = chooseBackend();
+        plugin.getLogger().info("Голограммы отображаются через " + selected.getName() + ".");
+        return selected;
     }
 
-    private void checkDependency() {
-        this.enabled = plugin.getServer().getPluginManager().getPlugin("DecentHolograms") != null;
+    private HologramBackend chooseBackend() {
+        String type = plugin.getConfigManager().getHologramType();
 
-        if (isEnabled()) {
-            plugin.getLogger().info("DecentHolograms найден — поддержка голограмм активирована.");
-        } else {
-            plugin.getLogger().warning("DecentHolograms не найден — голограммы будут отключены.");
+        if (type.equalsIgnoreCase("decentholograms")) {
+            if (plugin.getServer().getPluginManager().getPlugin("DecentHolograms") != null) {
+                return backend instanceof DecentHologramsBackend ? backend : new DecentHologramsBackend();
+            }
+            plugin.getLogger().warning("DecentHolograms не найден — голограммы будут отображаться через TextDisplay.");
+        } else if (!type.equalsIgnoreCase("text-display")) {
+            plugin.getLogger().warning("Неизвестный тип голограмм '" + type + "', используется text-display");
         }
+
+        return backend instanceof TextDisplayBackend ? backend : new TextDisplayBackend(plugin);
     }
 
-    public String createHologram(Location location, String ownerName) {
+    public String createHologram(ChestManager.DeathChestData chest) {
         if (!isEnabled()) return null;
 
+        Location location = chest.getLocation();
         Block block = location.getBlock();
         if (block.getType() != Material.CHEST) return null;
 
-        Location holoLoc = location.clone().add(0.5, 1.5, 0.5);
+        List<String> holoLines = getHologramLines(chest);
+        if (holoLines.isEmpty()) return null;
+
         String id = "deathchest_" + UUID.randomUUID().toString().substring(0, 8) + "_" +
                 location.getBlockX() + "_" + location.getBlockY() + "_" + location.getBlockZ();
+        backend.create(id, location, holoLines, plugin.getConfigManager().getHologramViewDistance() <= 0);
+        renderedLines.put(id, holoLines);
 
-        if (DHAPI.getHologram(id) != null) {
-            DHAPI.removeHologram(id);
-        }
+        return id;
+    }
 
-        List<String> holoLines = getHologramLines(ownerName);
+    public void removeHologram(String id) {
+        if (!isEnabled() || id == null) return;
+        renderedLines.remove(id);
+        backend.remove(id);
+    }
 
-        if (holoLines.isEmpty()) return null;
+    /**
+     * Существует ли голограмма с этим идентификатором у текущего способа отображения
+     */
+    public boolean hasHologram(String id) {
+        return isEnabled() && id != null && backend.exists(id);
+    }
 
-        Hologram hologram = DHAPI.createHologram(id, holoLoc, holoLines);
-        hologram.showAll();
+    private List<String> getHologramLines(ChestManager.DeathChestData chest) {
+        List<String> lines = plugin.getConfigManager().getHoloLines();
+        String timeLeft = hasTimeLeft(lines) ? formatTimeLeft(chest.getCreationTime()) : null;
 
-        return id;
+        List<String> result = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            line = line.replace("{owner}", chest.getOwnerName());
+            if (timeLeft != null) {
+                line = line.replace("{time_left}", timeLeft);
+            }
+            result.add(line);
+        }
+        return result;
     }
 
-    public void removeHologram(String id) {
-        if (!isEnabled() || id == null) return;
-        Hologram hologram = DHAPI.getHologram(id);
-        if (hologram != null) {
-            hologram.delete();
+    private static boolean hasTimeLeft(List<String> lines) {
+        for (String line : lines) {
+            if (line.contains("{time_left}")) return true;
         }
+        return false;
     }
 
-    private List<String> getHologramLines(String ownerName) {
-        return plugin.getConfigManager().getHoloLines()
-                .stream()
-                .map(line -> line.replace("{owner}", ownerName))
-                .toList();
+    private String formatTimeLeft(long creationTime) {
+        int expirationTime = plugin.getConfigManager().getExpirationTime();
+        if (expirationTime <= 0) {
+            return plugin.getConfigManager().getTimeAgo("never");
+        }
+
+        long left = creationTime + expirationTime * 60 * 1000L - System.currentTimeMillis();
+        // Округление вверх: пока остаётся хоть сколько-то, показывается не меньше минуты
+        long minutes = Math.max(0, (left + 59_999) / 60_000);
+        return MessageManager.formatDuration(Duration.ofMinutes(minutes));
     }
 
     /**
      * Перезагружает менеджер голограмм
-     * - Проверяет доступность DecentHolograms
-     * - Восстанавливает голограммы для всех активных сундуков
+     * - Заново выбирает способ отображения
+     * - При его смене удаляет старые голограммы и создаёт новые для всех активных сундуков
      */
     public void reload() {
         plugin.getLogger().info("Перезагрузка менеджера голограмм...");
 
-        boolean wasEnabled = isEnabled();
-        checkDependency();
+        HologramBackend previous = backend;
+        backend = selectBackend();
 
-        if (!isEnabled()) {
-            plugin.getLogger().warning("DecentHolograms не доступен - голограммы отключены");
+        if (previous != backend) {
+            previous.removeAll();
+            renderedLines.clear();
+            restoreAllHolograms();
+        }
+        startVisibilityTask();
+        startTextUpdateTask();
+    }
+
+    /**
+     * Удаляет все голограммы при выключении плагина
+     */
+    public void shutdown() {
+        cancelPending();
+        stopVisibilityTask();
+        stopTextUpdateTask();
+        backend.removeAll();
+        renderedLines.clear();
+    }
+
+    /**
+     * Раз в минуту пересчитывает строки всех голограмм, если в них есть {time_left}.
+     * Сундуки обрабатываются через планировщик с бюджетом на тик (на Folia — в потоках их регионов),
+     * а голограмма обновляется, только если её текст действительно изменился.
+     */
+    private void startTextUpdateTask() {
+        stopTextUpdateTask();
+        if (!hasTimeLeft(plugin.getConfigManager().getHoloLines())
+                || plugin.getConfigManager().getExpirationTime() <= 0) {
             return;
         }
 
-        if (isEnabled() && !wasEnabled) {
-            plugin.getLogger().info("DecentHolograms снова доступен - восстанавливаем голограммы...");
-            restoreAllHolograms();
-        } else if (isEnabled()) {
-            plugin.getLogger().info("DecentHolograms доступен - голограммы активны");
+        textUpdateTask = plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, task -> refreshTexts(),
+                TEXT_UPDATE_PERIOD_TICKS, TEXT_UPDATE_PERIOD_TICKS);
+    }
+
+    private void stopTextUpdateTask() {
+        if (textUpdateTask != null) {
+            textUpdateTask.cancel();
+            textUpdateTask = null;
+        }
+    }
+
+    private void refreshTexts() {
+        for (ChestManager.DeathChestData chest : plugin.getChestManager().getDeathChests()) {
+            plugin.getWorkScheduler().submit(chest.getWorld(), chest.getBlockKey(), () -> refreshText(chest));
+        }
+    }
+
+    private void refreshText(ChestManager.DeathChestData chest) {
+        String id = chest.getHologramId();
+        if (id == null || !plugin.getChestManager().isActive(chest) || !backend.exists(id)) {
+            return;
+        }
+
+        List<String> lines = getHologramLines(chest);
+        if (!lines.equals(renderedLines.get(id))) {
+            backend.update(id, lines);
+            renderedLines.put(id, lines);
+        }
+    }
+
+    /**
+     * Запускает периодическую проверку расстояний, если задана hologram-view-distance.
+     * За interval тиков обходятся все игроки, по части за тик.
+     */
+    private void startVisibilityTask() {
+        stopVisibilityTask();
+        if (plugin.getConfigManager().getHologramViewDistance() <= 0) return;
+
+        visibilityTask = plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, task -> updateVisibility(), 1L, 1L);
+    }
+
+    private void stopVisibilityTask() {
+        if (visibilityTask != null) {
+            visibilityTask.cancel();
+            visibilityTask = null;
+        }
+        visibleHolograms.clear();
+        visibilityCycle = List.of();
+        visibilityCursor = 0;
+    }
+
+    private void updateVisibility() {
+        if (visibilityCursor >= visibilityCycle.size()) {
+            visibilityCycle = new ArrayList<>(plugin.getServer().getOnlinePlayers());
+            visibilityCursor = 0;
+
+            Set<UUID> online = new HashSet<>();
+            for (Player player : visibilityCycle) {
+                online.add(player.getUniqueId());
+            }
+            visibleHolograms.keySet().retainAll(online);
+
+            if (visibilityCycle.isEmpty()) return;
+        }
+
+        int interval = plugin.getConfigManager().getHologramVisibilityInterval();
+        int batch = (visibilityCycle.size() + interval - 1) / interval;
+        int end = Math.min(visibilityCursor + batch, visibilityCycle.size());
+
+        for (; visibilityCursor < end; visibilityCursor++) {
+            Player player = visibilityCycle.get(visibilityCursor);
+            if (player.isOnline()) {
+                // Положение игрока читается в его потоке (на Paper — сразу же)
+                plugin.getWorkScheduler().execute(player, () -> updateVisibility(player));
+            }
         }
     }
 
+    /**
+     * Находит голограммы в радиусе видимости игрока по чанкам вокруг него
+     * и показывает/скрывает только те, что изменились с прошлой проверки.
+     * Вызывается в потоке игрока; показ и скрытие выполняются в потоке региона
+     * сундука, который на Folia может отличаться от региона игрока.
+     */
+    private void updateVisibility(Player player) {
+        double viewDistance = plugin.getConfigManager().getHologramViewDistance();
+        double maxDistanceSquared = viewDistance * viewDistance;
+
+        Location playerLocation = player.getLocation();
+        World world = playerLocation.getWorld();
+        double px = playerLocation.getX();
+        double py = playerLocation.getY();
+        double pz = playerLocation.getZ();
+        int chunkX = playerLocation.getBlockX() >> 4;
+        int chunkZ = playerLocation.getBlockZ() >> 4;
+        int chunkRadius = (int) Math.ceil(viewDistance / 16.0);
+
+        ChestManager chestManager = plugin.getChestManager();
+        Map<String, ChestManager.DeathChestData> visible = new HashMap<>();
+        for (int x = chunkX - chunkRadius; x <= chunkX + chunkRadius; x++) {
+            for (int z = chunkZ - chunkRadius; z <= chunkZ + chunkRadius; z++) {
+                chestManager.forEachInChunk(world, x, z, chest -> {
+                    String id = chest.getHologramId();
+                    if (id == null) return;
+
+                    long key = chest.getBlockKey();
+                    double dx = BlockKey.x(key) + 0.5 - px;
+                    double dy = BlockKey.y(key) + 0.5 - py;
+                    double dz = BlockKey.z(key) + 0.5 - pz;
+                    if (dx * dx + dy * dy + dz * dz <= maxDistanceSquared) {
+                        visible.put(id, chest);
+                    }
+                });
+            }
+        }
+
+        Map<String, ChestManager.DeathChestData> previous = visibleHolograms.getOrDefault(player.getUniqueId(), Map.of());
+        for (Map.Entry<String, ChestManager.DeathChestData> entry : visible.entrySet()) {
+            if (!previous.containsKey(entry.getKey())) {
+                runAtChest(entry.getValue(), () -> backend.show(entry.getKey(), player));
+            }
+        }
+        for (Map.Entry<String, ChestManager.DeathChestData> entry : previous.entrySet()) {
+            if (!visible.containsKey(entry.getKey())) {
+                runAtChest(entry.getValue(), () -> backend.hide(entry.getKey(), player));
+            }
+        }
+
+        if (visible.isEmpty()) {
+            visibleHolograms.remove(player.getUniqueId());
+        } else {
+            visibleHolograms.put(player.getUniqueId(), visible);
+        }
+    }
+
+    /**
+     * Выполняет действие с голограммой в потоке региона сундука; в своём регионе — сразу
+     */
+    private void runAtChest(ChestManager.DeathChestData chest, Runnable action) {
+        World world = chest.getWorld();
+        // Мир выгружен вместе с голограммой
+        if (world == null) return;
+
+        plugin.getWorkScheduler().execute(world, chest.getBlockKey(), action);
+    }
+
     /**
      * Восстанавливает голограммы для всех активных сундуков смерти
      */
     private void restoreAllHolograms() {
-        ChestManager chestManager = plugin.getChestManager();
-        int restoredCount = 0;
+        List<ChestManager.DeathChestData> chests = plugin.getChestManager().getDeathChests();
+        chests.forEach(this::requestHologram);
+
+        if (!chests.isEmpty()) {
+            plugin.getLogger().info("Восстановление голограмм для " + chests.size() + " сундуков смерти поставлено в очередь");
+        }
+    }
 
-        for (ChestManager.DeathChestData chest : chestManager.getDeathChests().values()) {
-            Location location = chest.getLocation();
-            Block block = location.getBlock();
+    /**
+     * Ставит сундук в очередь на создание голограммы. Очередь разбирается по
+     * holograms-per-tick сундуков за тик; сундуки в незагруженных чанках пропускаются
+     * и снова попадают в очередь при загрузке чанка.
+     */
+    public void requestHologram(ChestManager.DeathChestData chest) {
+        if (!isEnabled() || !plugin.getConfigManager().isHoloEnabled()) return;
 
-            if (block.getType() != Material.CHEST) {
-                continue;
+        synchronized (pending) {
+            if (pending.add(chest) && pendingTask == null) {
+                pendingTask = plugin.getServer().getGlobalRegionScheduler()
+                        .runAtFixedRate(plugin, task -> createPending(), 1L, 1L);
             }
+        }
+    }
+
+    /**
+     * Очищает очередь голограмм, например перед перезагрузкой сундуков
+     */
+    public void cancelPending() {
+        synchronized (pending) {
+            pending.clear();
+            stopPendingTask();
+        }
+    }
+
+    private void stopPendingTask() {
+        if (pendingTask != null) {
+            pendingTask.cancel();
+            pendingTask = null;
+        }
+    }
+
+    private void createPending() {
+        int limit = plugin.getConfigManager().getHologramsPerTick();
+        List<ChestManager.DeathChestData> batch = new ArrayList<>(limit);
 
-            if (plugin.getConfigManager().isHoloEnabled()) {
-                if (chest.getHologramId() == null || DHAPI.getHologram(chest.getHologramId()) == null) {
-                    String hologramId = createHologram(location, chest.getOwnerName());
-                    chest.setHologramId(hologramId);
-                    restoredCount++;
-                }
+        synchronized (pending) {
+            Iterator<ChestManager.DeathChestData> iterator = pending.iterator();
+            while (iterator.hasNext() && batch.size() < limit) {
+                batch.add(iterator.next());
+                iterator.remove();
             }
+            if (pending.isEmpty()) {
+                stopPendingTask();
+            }
+        }
+
+        ChestManager chestManager = plugin.getChestManager();
+        for (ChestManager.DeathChestData chest : batch) {
+            plugin.getWorkScheduler().execute(chest.getLocation(), () -> ensureHologram(chestManager, chest));
         }
+    }
 
-        if (restoredCount > 0) {
-            plugin.getLogger().info("Восстановлено " + restoredCount + " голограмм для сундуков смерти");
+    private void ensureHologram(ChestManager chestManager, ChestManager.DeathChestData chest) {
+        if (!isEnabled() || !chestManager.isActive(chest)) {
+            return;
         }
+
+        Location location = chest.getLocation();
+        if (!location.isChunkLoaded() || location.getBlock().getType() != Material.CHEST) {
+            return;
+        }
+
+        if (hasHologram(chest.getHologramId())) {
+            return;
+        }
+
+        // Голограммы не переживают перезапуск, поэтому новый идентификатор не сохраняется
+        chest.setHologramId(createHologram(chest));
     }
 
     /**
      * Проверяет, доступен ли менеджер голограмм
      */
     public boolean isEnabled() {
-        return enabled;
+        return backend != null;
     }
 }
@@ -4,14 +4,22 @@ import com.flyaway.deathchest.DeathChest;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MessageManager {
     private static ConfigManager configManager;
     private static final MiniMessage miniMessage = MiniMessage.miniMessage();
+    // Разобранные шаблоны сообщений; сбрасываются при перезагрузке конфигурации.
+    // Список сундуков собирается асинхронно, поэтому карта потокобезопасна.
+    private static final Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+    private static volatile Component prefix;
 
     public static void init(DeathChest plugin) {
         MessageManager.configManager = plugin.getConfigManager();
+        templates.clear();
+        prefix = miniMessage.deserialize(configManager.getPrefix() + " ");
     }
 
     public static Component buildMessage(String messageKey, String defaultMessage) {
@@ -19,19 +27,38 @@ public class MessageManager {
     }
 
     public static Component buildMessage(String messageKey, String defaultMessage, Map<String, String> placeholders) {
-        String prefix = configManager.getPrefix();
-        return miniMessage.deserialize(prefix + " ").append(buildRawMessage(messageKey, defaultMessage, placeholders));
+        return prefix.append(buildRawMessage(messageKey, defaultMessage, placeholders));
     }
 
-    public static Component buildRawMessage(String messageKey, String defaultMessage, Map<String, String> placeholders) {
-        String message = configManager.getMessage(messageKey, defaultMessage);
+    /**
+     * Длительность с точностью до минут, единицы берутся из time-ago
+     */
+    public static String formatDuration(Duration duration) {
+        long days = duration.toDays();
+        long hours = duration.toHours() % 24;
+        long minutes = duration.toMinutes() % 60;
 
-        if (placeholders != null && !placeholders.isEmpty()) {
-            for (Map.Entry<String, String> entry : placeholders.entrySet()) {
-                message = message.replace("{" + entry.getKey() + "}", entry.getValue());
-            }
+        if (days > 0) {
+            return String.format("%d %s, %d %s",
+                    days, configManager.getTimeAgo("days"),
+                    hours, configManager.getTimeAgo("hours"));
+        } else if (hours > 0) {
+            return String.format("%d %s, %d %s",
+                    hours, configManager.getTimeAgo("hours"),
+                    minutes, configManager.getTimeAgo("minutes"));
+        } else {
+            return String.format("%d %s",
+                    minutes, configManager.getTimeAgo("minutes"));
         }
+    }
 
-        return miniMessage.deserialize(message);
+    /**
+     * Шаблон кэшируется по ключу сообщения, поэтому текст по умолчанию должен быть постоянным:
+     * изменяемые части передаются через placeholders, а не подставляются в defaultMessage.
+     */
+    public static Component buildRawMessage(String messageKey, String defaultMessage, Map<String, String> placeholders) {
+        MessageTemplate template = templates.computeIfAbsent(messageKey,
+                key -> MessageTemplate.compile(configManager.getMessage(key, defaultMessage)));
+        return template.render(placeholders);
     }
 }
@@ -0,0 +1,83 @@
+package com.flyaway.deathchest.managers;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.TextReplacementConfig;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Строка MiniMessage, разобранная один раз. Плейсхолдеры вида {name} подставляются
+ * в готовый компонент как обычный текст, без повторного разбора MiniMessage.
+ * Если плейсхолдер не лежит целиком в одном текстовом узле (например, внутри тега
+ * click или разбит градиентом по символам), шаблон разбирается заново при каждой подстановке.
+ */
+public final class MessageTemplate {
+
+    private static final MiniMessage miniMessage = MiniMessage.miniMessage();
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([A-Za-z0-9_-]+)}");
+
+    private final String source;
+    private final Component component;
+    private final boolean hasPlaceholders;
+    private final boolean bindable;
+
+    private MessageTemplate(String source) {
+        this.source = source;
+        this.component = miniMessage.deserialize(source);
+
+        int expected = countPlaceholders(source);
+        this.hasPlaceholders = expected > 0;
+        this.bindable = countPlaceholders(component) == expected;
+    }
+
+    public static MessageTemplate compile(String source) {
+        return new MessageTemplate(source);
+    }
+
+    public Component render() {
+        return component;
+    }
+
+    public Component render(Map<String, String> placeholders) {
+        if (!hasPlaceholders || placeholders == null || placeholders.isEmpty()) {
+            return component;
+        }
+
+        if (!bindable) {
+            String message = source;
+            for (Map.Entry<String, String> entry : placeholders.entrySet()) {
+                message = message.replace("{" + entry.getKey() + "}", entry.getValue());
+            }
+            return miniMessage.deserialize(message);
+        }
+
+        return component.replaceText(TextReplacementConfig.builder()
+                .match(PLACEHOLDER)
+                .replacement((match, builder) -> {
+                    String value = placeholders.get(match.group(1));
+                    return value == null ? builder : builder.content(value);
+                })
+                .build());
+    }
+
+    private static int countPlaceholders(String text) {
+        int count = 0;
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int countPlaceholders(Component component) {
+        int count = component instanceof TextComponent text ? countPlaceholders(text.content()) : 0;
+        for (Component child : component.children()) {
+            count += countPlaceholders(child);
+        }
+        return count;
+    }
+}
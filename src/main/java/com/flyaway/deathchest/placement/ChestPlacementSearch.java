@@ -0,0 +1,147 @@
+package com.flyaway.deathchest.placement;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Поиск места для сундука смерти вокруг точки смерти.
+ * Позиции перебираются от ближних к дальним по заранее отсортированному списку смещений,
+ * тип блока читается прямо из загруженного чанка через World#getType, без снимков чанков и объектов Block.
+ * Позиция без твёрдого блока снизу получает штраф и выбирается, только если
+ * позиции с опорой нет поблизости. На Folia поиск может идти одновременно в нескольких
+ * регионах, поэтому рассматриваются только чанки региона текущего потока.
+ */
+public class ChestPlacementSearch {
+
+    public static final int MAX_RADIUS = 16;
+
+    // Штраф к квадрату расстояния для позиции без опоры: опора на 3 блока дальше ещё лучше
+    private static final int NO_GROUND_PENALTY = 9;
+
+    private final Predicate<Material> suitable;
+
+    private volatile Offsets offsets = new Offsets(-1, new int[0], new int[0]);
+
+    // Состояние чанка в сетке поиска
+    private static final byte CHUNK_UNKNOWN = 0;
+    private static final byte CHUNK_READABLE = 1;
+    private static final byte CHUNK_SKIPPED = 2;
+
+    /**
+     * Смещения (dx, dy, dz), упакованные по байту, и квадраты расстояний — в порядке возрастания
+     */
+    private record Offsets(int radius, int[] packed, int[] distances) {
+    }
+
+    public ChestPlacementSearch(Predicate<Material> suitable) {
+        this.suitable = suitable;
+    }
+
+    /**
+     * Находит ближайшее подходящее место в пределах радиуса (в блоках по каждой оси)
+     *
+     * @return расположение блока или null, если места нет
+     */
+    public Location find(Location origin, int radius) {
+        World world = origin.getWorld();
+        if (world == null) return null;
+
+        int minY = world.getMinHeight();
+        int maxY = world.getMaxHeight();
+        int originX = origin.getBlockX();
+        int originY = Math.max(minY, Math.min(maxY - 1, origin.getBlockY()));
+        int originZ = origin.getBlockZ();
+
+        // Обычный случай — сама точка смерти на твёрдой земле
+        Block block = world.getBlockAt(originX, originY, originZ);
+        if (suitable.test(block.getType()) && originY > minY
+                && block.getRelative(0, -1, 0).getType().isSolid()) {
+            return block.getLocation();
+        }
+
+        Offsets offsets = offsets(Math.max(0, Math.min(MAX_RADIUS, radius)));
+        int[] packed = offsets.packed();
+        int[] distances = offsets.distances();
+
+        int minChunkX = (originX - offsets.radius()) >> 4;
+        int minChunkZ = (originZ - offsets.radius()) >> 4;
+        int sideX = ((originX + offsets.radius()) >> 4) - minChunkX + 1;
+        int sideZ = ((originZ + offsets.radius()) >> 4) - minChunkZ + 1;
+        byte[] chunks = new byte[sideX * sideZ];
+
+        int bestScore = Integer.MAX_VALUE;
+        int bestX = 0;
+        int bestY = 0;
+        int bestZ = 0;
+
+        for (int i = 0; i < packed.length; i++) {
+            int distance = distances[i];
+            if (distance >= bestScore) break;
+
+            int offset = packed[i];
+            int x = originX + (byte) offset;
+            int y = originY + (byte) (offset >> 8);
+            int z = originZ + (byte) (offset >> 16);
+            if (y < minY || y >= maxY) continue;
+
+            // Загрузка и владение проверяются один раз на чанк; незагруженные чанки не загружаются
+            int slot = ((z >> 4) - minChunkZ) * sideX + ((x >> 4) - minChunkX);
+            if (chunks[slot] == CHUNK_UNKNOWN) {
+                chunks[slot] = world.isChunkLoaded(x >> 4, z >> 4) && Bukkit.isOwnedByCurrentRegion(world, x >> 4, z >> 4)
+                        ? CHUNK_READABLE : CHUNK_SKIPPED;
+            }
+            if (chunks[slot] == CHUNK_SKIPPED) continue;
+
+            if (!suitable.test(world.getType(x, y, z))) continue;
+
+            boolean ground = y > minY && world.getType(x, y - 1, z).isSolid();
+            int score = ground ? distance : distance + NO_GROUND_PENALTY;
+            if (score < bestScore) {
+                bestScore = score;
+                bestX = x;
+                bestY = y;
+                bestZ = z;
+            }
+        }
+
+        if (bestScore == Integer.MAX_VALUE) return null;
+
+        return new Location(world, bestX, bestY, bestZ);
+    }
+
+    private Offsets offsets(int radius) {
+        Offsets current = offsets;
+        if (current.radius() == radius) return current;
+
+        int side = radius * 2 + 1;
+        long[] sorted = new long[side * side * side];
+        int count = 0;
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    int distance = dx * dx + dy * dy + dz * dz;
+                    int packed = (dx & 0xFF) | (dy & 0xFF) << 8 | (dz & 0xFF) << 16;
+                    sorted[count++] = (long) distance << 32 | packed;
+                }
+            }
+        }
+        Arrays.sort(sorted);
+
+        int[] packed = new int[count];
+        int[] distances = new int[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = (int) sorted[i];
+            distances[i] = (int) (sorted[i] >>> 32);
+        }
+
+        current = new Offsets(radius, packed, distances);
+        offsets = current;
+        return current;
+    }
+}
@@ -0,0 +1,49 @@
+package com.flyaway.deathchest.scheduler;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Очередь сроков истечения на минимальной куче: проверка на каждом тике стоит
+ * одного взгляда на вершину, а извлекаются только те элементы, чей срок уже наступил.
+ * Удалённые элементы не вычищаются из кучи — вызывающий код отбрасывает их при извлечении.
+ */
+public class ExpiryQueue<T> {
+
+    private record Entry<T>(long deadline, T item) {
+    }
+
+    private final PriorityQueue<Entry<T>> queue = new PriorityQueue<>(Comparator.comparingLong(Entry::deadline));
+
+    public void schedule(T item, long deadline) {
+        queue.add(new Entry<>(deadline, item));
+    }
+
+    /**
+     * Извлекает следующий элемент, срок которого не позже now, или null
+     */
+    public T pollDue(long now) {
+        Entry<T> head = queue.peek();
+        if (head == null || head.deadline() > now) {
+            return null;
+        }
+        queue.poll();
+        return head.item();
+    }
+
+    /**
+     * Удаляет элементы за один проход по куче; нужен, когда отброшенных элементов накопилось много
+     */
+    public void removeIf(Predicate<? super T> filter) {
+        queue.removeIf(entry -> filter.test(entry.item()));
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public void clear() {
+        queue.clear();
+    }
+}
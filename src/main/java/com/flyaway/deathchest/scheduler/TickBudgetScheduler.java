@@ -0,0 +1,148 @@
+package com.flyaway.deathchest.scheduler;
+
+import com.flyaway.deathchest.index.BlockKey;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Очередь массовых операций над сундуками, которая выполняется понемногу каждый тик.
+ * За тик выполняется хотя бы одна задача, а дальше — пока не исчерпан бюджет в миллисекундах.
+ * Остаток переносится на следующие тики, поэтому большие проходы не дают одного длинного лага.
+ * <p>
+ * Очередь разбирается глобальным планировщиком. На Folia задачи, привязанные к чанку,
+ * сразу уходят в планировщик региона, которому принадлежит чанк; на Paper они
+ * попадают в общую очередь с бюджетом, так как все регионы — это основной поток.
+ */
+public class TickBudgetScheduler {
+
+    private static final boolean FOLIA = isFolia();
+
+    private final JavaPlugin plugin;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private ScheduledTask task;
+    private volatile long budgetNanos;
+
+    public TickBudgetScheduler(JavaPlugin plugin, double budgetMillis) {
+        this.plugin = plugin;
+        setBudgetMillis(budgetMillis);
+    }
+
+    private static boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public void setBudgetMillis(double budgetMillis) {
+        this.budgetNanos = (long) (Math.max(0.1, budgetMillis) * 1_000_000L);
+    }
+
+    /**
+     * Задача над блоками чанка: выполняется в потоке региона, которому принадлежит чанк
+     */
+    public void submit(World world, int chunkX, int chunkZ, Runnable job) {
+        if (FOLIA) {
+            plugin.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> run(job));
+        } else {
+            queue.add(job);
+        }
+    }
+
+    /**
+     * Задача над блоком, заданным упакованным ключом {@link BlockKey#pack}
+     */
+    public void submit(World world, long blockKey, Runnable job) {
+        submit(world, BlockKey.x(blockKey) >> 4, BlockKey.z(blockKey) >> 4, job);
+    }
+
+    /**
+     * Выполняет задачу сразу, если текущий поток владеет местом, иначе — в потоке его региона
+     */
+    public void execute(Location location, Runnable job) {
+        if (plugin.getServer().isOwnedByCurrentRegion(location)) {
+            run(job);
+        } else {
+            plugin.getServer().getRegionScheduler().execute(plugin, location, () -> run(job));
+        }
+    }
+
+    /**
+     * Выполняет задачу сразу, если текущий поток владеет блоком с упакованным ключом
+     * {@link BlockKey#pack}, иначе — в потоке его региона
+     */
+    public void execute(World world, long blockKey, Runnable job) {
+        int chunkX = BlockKey.x(blockKey) >> 4;
+        int chunkZ = BlockKey.z(blockKey) >> 4;
+        if (plugin.getServer().isOwnedByCurrentRegion(world, chunkX, chunkZ)) {
+            run(job);
+        } else {
+            plugin.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> run(job));
+        }
+    }
+
+    /**
+     * Выполняет задачу сразу, если текущий поток владеет сущностью, иначе — в её потоке
+     */
+    public void execute(Entity entity, Runnable job) {
+        if (plugin.getServer().isOwnedByCurrentRegion(entity)) {
+            run(job);
+        } else {
+            entity.getScheduler().run(plugin, scheduled -> run(job), null);
+        }
+    }
+
+    public void start() {
+        if (task != null) return;
+        task = plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, scheduled -> tick(), 1L, 1L);
+    }
+
+    private void tick() {
+        if (queue.isEmpty()) return;
+
+        long deadline = System.nanoTime() + budgetNanos;
+        Runnable job;
+        do {
+            job = queue.poll();
+            if (job == null) return;
+            run(job);
+        } while (System.nanoTime() < deadline);
+    }
+
+    /**
+     * Выполняет все оставшиеся задачи сразу, без учёта бюджета
+     */
+    public void runAll() {
+        Runnable job;
+        while ((job = queue.poll()) != null) {
+            run(job);
+        }
+    }
+
+    /**
+     * Останавливает таймер и выполняет оставшиеся задачи
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        runAll();
+    }
+
+    private void run(Runnable job) {
+        try {
+            job.run();
+        } catch (Exception e) {
+            plugin.getLogger().warning("Ошибка при выполнении задачи сундуков смерти: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.flyaway.deathchest.storage;
+
+import java.util.UUID;
+
+/**
+ * Неизменяемый снимок сундука смерти, который можно безопасно передать в поток записи.
+ * Содержимое хранится в упакованной форме ItemCodec и разбирается только при создании инвентаря;
+ * массив не изменяется после создания записи. У записей, прочитанных при загрузке, и у сундуков,
+ * ждущих загрузки чанка, содержимого нет (null): оно читается из хранилища при установке.
+ */
+public record ChestRecord(String world, int x, int y, int z,
+                          UUID owner, String ownerName, long creationTime,
+                          String hologramId, byte[] contents) {
+
+    public String key() {
+        return key(world, x, y, z);
+    }
+
+    public static String key(String world, int x, int y, int z) {
+        return world + ";" + x + ";" + y + ";" + z;
+    }
+}
@@ -0,0 +1,39 @@
+package com.flyaway.deathchest.storage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Постоянное хранилище сундуков смерти.
+ * Методы save и remove вызываются из основного потока и не должны блокировать его.
+ */
+public interface ChestStorage {
+
+    /**
+     * Читает все сундуки без содержимого: в записях contents равно null.
+     * Перед чтением дожидается записи накопленных изменений.
+     */
+    List<ChestRecord> load();
+
+    /**
+     * Читает содержимое сундуков в упакованной форме ItemCodec вне вызывающего потока,
+     * с учётом изменений, ещё не записанных на диск. Сундуков, которых нет в хранилище, в результате нет.
+     */
+    CompletableFuture<Map<String, byte[]>> loadContents(Collection<String> keys);
+
+    void save(ChestRecord record);
+
+    void remove(String key);
+
+    /**
+     * Синхронно записывает все накопленные изменения
+     */
+    void flush();
+
+    /**
+     * Сохраняет всё, что осталось в очереди, и освобождает ресурсы хранилища
+     */
+    void close();
+}
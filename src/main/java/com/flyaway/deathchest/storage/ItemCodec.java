@@ -0,0 +1,96 @@
+package com.flyaway.deathchest.storage;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Компактное бинарное представление содержимого сундука с сохранением позиций слотов.
+ * <p>
+ * Упакованная форма, в которой содержимое живёт в памяти и в ChestRecord, совпадает
+ * с форматом хранилищ: несжатые данные начинаются с числа слотов (не меньше нуля).
+ * Сжатые данные начинаются с маркера -1, за ним число слотов и сжатое представление,
+ * поэтому прочитанные из хранилища байты используются без копирования и разбора.
+ */
+public final class ItemCodec {
+
+    private static final int DEFLATED = -1;
+
+    private ItemCodec() {
+    }
+
+    static byte[] encode(ItemStack[] items) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(items.length);
+        for (ItemStack item : items) {
+            if (item == null || item.getType().isAir()) {
+                out.writeInt(0);
+            } else {
+                byte[] data = item.serializeAsBytes();
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static ItemStack[] decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        ItemStack[] items = new ItemStack[in.readInt()];
+        for (int i = 0; i < items.length; i++) {
+            int length = in.readInt();
+            if (length > 0) {
+                byte[] item = new byte[length];
+                in.readFully(item);
+                items[i] = ItemStack.deserializeBytes(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Упаковывает содержимое, при compress дополнительно сжимая его
+     */
+    public static byte[] pack(ItemStack[] items, boolean compress) throws IOException {
+        byte[] data = encode(items);
+        if (!compress) return data;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(DEFLATED);
+        out.writeInt(items.length);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(bytes)) {
+            deflater.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ItemStack[] unpack(byte[] packed) throws IOException {
+        return decode(encoded(packed));
+    }
+
+    /**
+     * Число слотов без разбора предметов
+     */
+    public static int slots(byte[] packed) {
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        int first = buffer.getInt(0);
+        return first == DEFLATED ? buffer.getInt(4) : first;
+    }
+
+    /**
+     * Несжатая форма для записи в хранилище; несжатые данные возвращаются как есть
+     */
+    static byte[] encoded(byte[] packed) throws IOException {
+        if (ByteBuffer.wrap(packed).getInt(0) != DEFLATED) {
+            return packed;
+        }
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(packed, 8, packed.length - 8))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package com.flyaway.deathchest.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище сундуков в виде журнала, в который только дописываются записи:
+ * создание, изменение содержимого и удаление. Каждое изменение стоит одной записи,
+ * а не перезаписи всего файла. Когда доля устаревших записей становится слишком большой,
+ * фоновый поток переписывает журнал, оставляя только живые сундуки.
+ * <p>
+ * Формат кадра: длина (int), CRC32 (int), данные. Оборванный или повреждённый хвост
+ * отбрасывается при загрузке.
+ * <p>
+ * В памяти для каждого сундука хранятся только положения его данных в файле и их CRC32:
+ * сами байты читаются с диска, когда нужно сравнить их с новой версией или переписать журнал.
+ */
+public class LogChestStorage extends WriteBehindChestStorage {
+
+    private static final int MAGIC = 0x44434C47; // "DCLG"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int MAX_FRAME_BYTES = 16 << 20;
+
+    private static final byte OP_CREATE = 1;
+    private static final byte OP_UPDATE_CONTENTS = 2;
+    private static final byte OP_REMOVE = 3;
+
+    private static final long COMPACT_MIN_BYTES = 1L << 20;
+    private static final double COMPACT_GARBAGE_RATIO = 0.5;
+
+    private final File file;
+    private final File legacyFile;
+
+    // Состояние ниже меняется только в потоке записи (или при загрузке, когда поток простаивает)
+    private final Map<String, LiveRecord> live = new HashMap<>();
+    private FileChannel channel;
+    private long fileSize;
+    private long liveBytes;
+    // В конце файла остался оборванный кадр, который не удалось обрезать: перед следующей записью журнал переписывается
+    private boolean tornTail;
+
+    private static final class LiveRecord {
+        private final String world;
+        private final int x;
+        private final int y;
+        private final int z;
+        // Последний кадр создания целиком и блоки данных внутри журнала
+        private long createOffset;
+        private int createLength;
+        private long headerOffset;
+        private int headerLength;
+        private int headerCrc;
+        private long contentsOffset;
+        private int contentsLength;
+        private int contentsCrc;
+
+        private LiveRecord(String world, int x, int y, int z) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        /**
+         * Запоминает кадр создания, записанный с позиции frameOffset; блоки лежат в конце его данных
+         */
+        private void created(long frameOffset, int payloadLength, byte[] header, byte[] contents) {
+            createOffset = frameOffset;
+            createLength = FRAME_HEADER_BYTES + payloadLength;
+            contentsUpdated(frameOffset, payloadLength, contents);
+            headerOffset = contentsOffset - 4 - header.length;
+            headerLength = header.length;
+            headerCrc = crc(header);
+        }
+
+        private void contentsUpdated(long frameOffset, int payloadLength, byte[] contents) {
+            contentsOffset = frameOffset + FRAME_HEADER_BYTES + payloadLength - contents.length;
+            contentsLength = contents.length;
+            contentsCrc = crc(contents);
+        }
+
+        /**
+         * Лежит ли актуальное содержимое в кадре создания: тогда кадр можно скопировать как есть
+         */
+        private boolean selfContained() {
+            return contentsOffset > createOffset && contentsOffset < createOffset + createLength;
+        }
+    }
+
+    public LogChestStorage(File file, File legacyFile, Logger logger) {
+        super(logger);
+        this.file = file;
+        this.legacyFile = legacyFile;
+    }
+
+    /**
+     * Читает все живые сундуки из журнала. При первом запуске переносит данные из chests.yml.
+     */
+    @Override
+    protected List<ChestRecord> readAll() throws IOException {
+        if (!file.exists() && legacyFile.exists()) {
+            migrateLegacy();
+        }
+        return replay();
+    }
+
+    @Override
+    protected void writeBatch(Map<String, ChestRecord> batch) throws IOException {
+        openChannel();
+        if (tornTail) {
+            compact();
+        }
+        for (Map.Entry<String, ChestRecord> entry : batch.entrySet()) {
+            if (entry.getValue() == null) {
+                appendRemove(entry.getKey());
+            } else {
+                appendSave(entry.getValue());
+            }
+        }
+        channel.force(false);
+
+        if (fileSize >= COMPACT_MIN_BYTES && garbageRatio() > COMPACT_GARBAGE_RATIO) {
+            compact();
+        }
+    }
+
+    @Override
+    protected void closeResources() {
+        closeChannel();
+    }
+
+    private void appendSave(ChestRecord record) throws IOException {
+        String key = record.key();
+        byte[] header = encodeHeader(record);
+        byte[] contents = ItemCodec.encoded(record.contents());
+        LiveRecord current = live.get(key);
+
+        // Состояние в памяти меняется только после того, как кадр целиком записан
+        if (current == null || !stored(current.headerOffset, current.headerLength, current.headerCrc, header)) {
+            LiveRecord created = new LiveRecord(record.world(), record.x(), record.y(), record.z());
+            byte[] payload = encodeCreate(created.world, created.x, created.y, created.z, header, contents);
+            created.created(appendFrame(payload), payload.length, header, contents);
+            if (current != null) {
+                liveBytes -= compactedSize(current);
+            }
+            live.put(key, created);
+            liveBytes += compactedSize(created);
+        } else if (!stored(current.contentsOffset, current.contentsLength, current.contentsCrc, contents)) {
+            byte[] payload = encodeUpdateContents(current, contents);
+            long position = appendFrame(payload);
+            liveBytes -= compactedSize(current);
+            current.contentsUpdated(position, payload.length, contents);
+            liveBytes += compactedSize(current);
+        }
+    }
+
+    /**
+     * Совпадают ли байты с уже записанными в журнал. Файл читается, только если совпали длина и CRC32.
+     */
+    private boolean stored(long offset, int length, int crc, byte[] bytes) throws IOException {
+        return length == bytes.length && crc == crc(bytes) && Arrays.equals(read(offset, length), bytes);
+    }
+
+    private void appendRemove(String key) throws IOException {
+        LiveRecord current = live.get(key);
+        if (current == null) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_REMOVE);
+        writeKey(out, current.world, current.x, current.y, current.z);
+        appendFrame(bytes.toByteArray());
+        live.remove(key);
+        liveBytes -= compactedSize(current);
+    }
+
+    /**
+     * Дописывает кадр в конец журнала. Если запись оборвалась, частично записанный кадр
+     * обрезается: иначе следующие кадры легли бы за ним, и загрузка отбросила бы их вместе с ним.
+     *
+     * @return позиция кадра в файле
+     */
+    private long appendFrame(byte[] payload) throws IOException {
+        long position = fileSize;
+        ByteBuffer buffer = frame(payload);
+        try {
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            fileSize = position;
+            try {
+                channel.truncate(position);
+                channel.position(position);
+            } catch (IOException truncateError) {
+                tornTail = true;
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+        return position;
+    }
+
+    private byte[] read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("журнал короче ожидаемого");
+            }
+        }
+        return buffer.array();
+    }
+
+    private double garbageRatio() {
+        long logBytes = fileSize - FILE_HEADER_BYTES;
+        if (logBytes <= 0) return 0;
+        return 1.0 - (double) liveBytes / logBytes;
+    }
+
+    /**
+     * Переписывает журнал во временный файл, оставляя только живые сундуки, и атомарно заменяет им старый.
+     * Кадры создания, содержимое которых не менялось, копируются из старого файла как есть;
+     * остальные собираются заново из блоков, прочитанных с диска.
+     */
+    private void compact() throws IOException {
+        long before = fileSize;
+
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(file.getName() + ".compact");
+        Map<String, LiveRecord> compacted = new HashMap<>(live.size() * 2);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, fileHeader());
+            long position = FILE_HEADER_BYTES;
+            for (Map.Entry<String, LiveRecord> entry : live.entrySet()) {
+                LiveRecord record = entry.getValue();
+                LiveRecord moved = new LiveRecord(record.world, record.x, record.y, record.z);
+                if (record.selfContained()) {
+                    long copied = 0;
+                    while (copied < record.createLength) {
+                        copied += channel.transferTo(record.createOffset + copied, record.createLength - copied, out);
+                    }
+                    long shift = position - record.createOffset;
+                    moved.createOffset = position;
+                    moved.createLength = record.createLength;
+                    moved.headerOffset = record.headerOffset + shift;
+                    moved.headerLength = record.headerLength;
+                    moved.headerCrc = record.headerCrc;
+                    moved.contentsOffset = record.contentsOffset + shift;
+                    moved.contentsLength = record.contentsLength;
+                    moved.contentsCrc = record.contentsCrc;
+                } else {
+                    byte[] header = read(record.headerOffset, record.headerLength);
+                    byte[] contents = read(record.contentsOffset, record.contentsLength);
+                    byte[] payload = encodeCreate(record.world, record.x, record.y, record.z, header, contents);
+                    writeFully(out, frame(payload));
+                    moved.created(position, payload.length, header, contents);
+                }
+                position += moved.createLength;
+                compacted.put(entry.getKey(), moved);
+            }
+            out.force(true);
+        }
+        closeChannel();
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        live.clear();
+        live.putAll(compacted);
+        tornTail = false;
+        openChannel();
+        logger.info("Файл сундуков смерти сжат: " + before / 1024 + " КБ -> " + fileSize / 1024 + " КБ");
+    }
+
+    private List<ChestRecord> replay() throws IOException {
+        closeChannel();
+        live.clear();
+        liveBytes = 0;
+        // Оборванный хвост отбрасывается ниже вместе с повреждённым концом файла
+        tornTail = false;
+
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+
+        long validBytes = FILE_HEADER_BYTES;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                in.close();
+                moveAsideUnreadable();
+                return new ArrayList<>();
+            }
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                long frameOffset = validBytes;
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    break;
+                }
+
+                int checksum = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                try {
+                    apply(payload, frameOffset);
+                } catch (IOException e) {
+                    break;
+                }
+                validBytes += FRAME_HEADER_BYTES + length;
+            }
+        } catch (EOFException e) {
+            // Оборванная последняя запись — отбрасываем её ниже
+        }
+
+        if (validBytes < file.length()) {
+            logger.warning("Файл сундуков смерти повреждён в конце, отброшено " + (file.length() - validBytes) + " байт");
+            try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncate.truncate(validBytes);
+            }
+        }
+
+        // Содержимое не читается: оно понадобится, только когда загрузится чанк сундука
+        openChannel();
+        List<ChestRecord> records = new ArrayList<>(live.size());
+        for (LiveRecord record : live.values()) {
+            ChestRecord decoded = decodeOrNull(record);
+            if (decoded != null) {
+                records.add(decoded);
+            }
+        }
+
+        if (fileSize >= COMPACT_MIN_BYTES && garbageRatio() > COMPACT_GARBAGE_RATIO) {
+            compact();
+        }
+
+        return records;
+    }
+
+    private void moveAsideUnreadable() throws IOException {
+        File unreadable = new File(file.getParentFile(), file.getName() + ".unreadable-" + System.currentTimeMillis());
+        Files.move(file.toPath(), unreadable.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.severe("Неизвестный формат файла " + file.getName() + ", он сохранён как " + unreadable.getName());
+    }
+
+    /**
+     * Применяет кадр, записанный с позиции frameOffset. Байты блоков не сохраняются, запоминается только их положение.
+     */
+    private void apply(byte[] payload, long frameOffset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String world = in.readUTF();
+        int x = in.readInt();
+        int y = in.readInt();
+        int z = in.readInt();
+        String key = ChestRecord.key(world, x, y, z);
+
+        switch (op) {
+            case OP_CREATE -> {
+                LiveRecord previous = live.remove(key);
+                if (previous != null) {
+                    liveBytes -= compactedSize(previous);
+                }
+                LiveRecord record = new LiveRecord(world, x, y, z);
+                record.created(frameOffset, payload.length, readBlock(in), readBlock(in));
+                live.put(key, record);
+                liveBytes += compactedSize(record);
+            }
+            case OP_UPDATE_CONTENTS -> {
+                LiveRecord record = live.get(key);
+                if (record != null) {
+                    liveBytes -= compactedSize(record);
+                    record.contentsUpdated(frameOffset, payload.length, readBlock(in));
+                    liveBytes += compactedSize(record);
+                }
+            }
+            case OP_REMOVE -> {
+                LiveRecord record = live.remove(key);
+                if (record != null) {
+                    liveBytes -= compactedSize(record);
+                }
+            }
+            default -> throw new IOException("неизвестный тип записи " + op);
+        }
+    }
+
+    private void migrateLegacy() throws IOException {
+        YamlChestStorage legacy = new YamlChestStorage(legacyFile, logger);
+        List<ChestRecord> records = legacy.readAll();
+
+        // Положения записей в памяти заполнит следующее за переносом чтение журнала
+        Path temp = file.toPath().resolveSibling(file.getName() + ".compact");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, fileHeader());
+            for (ChestRecord record : records) {
+                byte[] contents = legacy.readContents(record.key());
+                if (contents == null) continue;
+
+                writeFully(out, frame(encodeCreate(record.world(), record.x(), record.y(), record.z(),
+                        encodeHeader(record), contents)));
+            }
+            out.force(true);
+        } finally {
+            legacy.close();
+        }
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        File migrated = new File(legacyFile.getParentFile(), legacyFile.getName() + ".migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            logger.warning("Не удалось переименовать " + legacyFile.getName() + " после переноса");
+        }
+        logger.info("Перенесено " + records.size() + " сундуков смерти из " + legacyFile.getName());
+    }
+
+    private void openChannel() throws IOException {
+        if (channel != null) return;
+
+        Path path = file.toPath();
+        Files.createDirectories(path.getParent());
+        boolean fresh = !Files.exists(path) || Files.size(path) == 0;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (fresh) {
+            writeFully(channel, fileHeader());
+        }
+        fileSize = channel.size();
+        channel.position(fileSize);
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warning("Не удалось закрыть файл сундуков смерти: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private static ByteBuffer fileHeader() {
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).flip();
+        return buffer;
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        return buffer;
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long compactedSize(LiveRecord record) {
+        // op + ключ + два блока с длинами; длина имени мира в UTF оценивается по числу символов
+        return FRAME_HEADER_BYTES + 1 + 2 + record.world.length() + 12
+                + 4 + record.headerLength + 4 + record.contentsLength;
+    }
+
+    /**
+     * Данные кадра создания; блок содержимого всегда последний, блок заголовка — перед ним
+     */
+    private static byte[] encodeCreate(String world, int x, int y, int z, byte[] header, byte[] contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + header.length + contents.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_CREATE);
+        writeKey(out, world, x, y, z);
+        writeBlock(out, header);
+        writeBlock(out, contents);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeUpdateContents(LiveRecord record, byte[] contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + contents.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_UPDATE_CONTENTS);
+        writeKey(out, record.world, record.x, record.y, record.z);
+        writeBlock(out, contents);
+        return bytes.toByteArray();
+    }
+
+    private static void writeKey(DataOutputStream out, String world, int x, int y, int z) throws IOException {
+        out.writeUTF(world);
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(z);
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] block) throws IOException {
+        out.writeInt(block.length);
+        out.write(block);
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        byte[] block = new byte[in.readInt()];
+        in.readFully(block);
+        return block;
+    }
+
+    private static byte[] encodeHeader(ChestRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(record.owner().getMostSignificantBits());
+        out.writeLong(record.owner().getLeastSignificantBits());
+        out.writeUTF(record.ownerName() != null ? record.ownerName() : "");
+        out.writeLong(record.creationTime());
+        out.writeBoolean(record.hologramId() != null);
+        if (record.hologramId() != null) {
+            out.writeUTF(record.hologramId());
+        }
+        return bytes.toByteArray();
+    }
+
+    private ChestRecord decodeOrNull(LiveRecord record) {
+        try {
+            return decode(record);
+        } catch (Exception e) {
+            logger.warning("Ошибка при загрузке сундука смерти: "
+                    + ChestRecord.key(record.world, record.x, record.y, record.z) + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ChestRecord decode(LiveRecord record) throws IOException {
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(read(record.headerOffset, record.headerLength)));
+        UUID owner = new UUID(header.readLong(), header.readLong());
+        String ownerName = header.readUTF();
+        long creationTime = header.readLong();
+        String hologramId = header.readBoolean() ? header.readUTF() : null;
+
+        return new ChestRecord(record.world, record.x, record.y, record.z,
+                owner, ownerName, creationTime, hologramId, null);
+    }
+
+    @Override
+    protected byte[] readContents(String key) throws IOException {
+        LiveRecord record = live.get(key);
+        if (record == null) return null;
+
+        openChannel();
+        return read(record.contentsOffset, record.contentsLength);
+    }
+}
@@ -0,0 +1,171 @@
+package com.flyaway.deathchest.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Хранилище сундуков во встроенной базе SQLite (chests.db в папке плагина).
+ * Одна строка на сундук, содержимое хранится одним бинарным полем.
+ * Накопленные изменения записываются пачкой в одной транзакции из потока записи.
+ * Драйвер SQLite поставляется вместе с сервером Paper.
+ */
+public class SqliteChestStorage extends WriteBehindChestStorage {
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS death_chests (
+                id TEXT PRIMARY KEY,
+                world TEXT NOT NULL,
+                x INTEGER NOT NULL,
+                y INTEGER NOT NULL,
+                z INTEGER NOT NULL,
+                owner TEXT NOT NULL,
+                owner_name TEXT,
+                creation_time INTEGER NOT NULL,
+                hologram_id TEXT,
+                items BLOB NOT NULL
+            )""";
+
+    private static final String SELECT_ALL = "SELECT world, x, y, z, owner, owner_name, creation_time, hologram_id FROM death_chests";
+    private static final String SELECT_ITEMS = "SELECT items FROM death_chests WHERE id = ?";
+    private static final String UPSERT = "INSERT OR REPLACE INTO death_chests "
+            + "(id, world, x, y, z, owner, owner_name, creation_time, hologram_id, items) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM death_chests WHERE id = ?";
+
+    private final File file;
+    // Используется только в потоке записи (или при загрузке, когда поток простаивает)
+    private Connection connection;
+
+    public SqliteChestStorage(File file, Logger logger) {
+        super(logger);
+        this.file = file;
+    }
+
+    /**
+     * Проверяет, доступен ли драйвер SQLite на сервере
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected List<ChestRecord> readAll() throws SQLException {
+        Connection connection = connection();
+        List<ChestRecord> records = new ArrayList<>();
+
+        // Содержимое не читается: оно понадобится, только когда загрузится чанк сундука
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(SELECT_ALL)) {
+            while (result.next()) {
+                String world = result.getString(1);
+                int x = result.getInt(2);
+                int y = result.getInt(3);
+                int z = result.getInt(4);
+
+                try {
+                    records.add(new ChestRecord(world, x, y, z,
+                            UUID.fromString(result.getString(5)),
+                            result.getString(6),
+                            result.getLong(7),
+                            result.getString(8),
+                            null));
+                } catch (Exception e) {
+                    logger.warning("Ошибка при загрузке сундука смерти: "
+                            + ChestRecord.key(world, x, y, z) + " - " + e.getMessage());
+                }
+            }
+        }
+        connection.commit();
+
+        return records;
+    }
+
+    @Override
+    protected byte[] readContents(String key) throws SQLException {
+        Connection connection = connection();
+        byte[] contents;
+        try (PreparedStatement select = connection.prepareStatement(SELECT_ITEMS)) {
+            select.setString(1, key);
+            try (ResultSet result = select.executeQuery()) {
+                contents = result.next() ? result.getBytes(1) : null;
+            }
+        }
+        connection.commit();
+        return contents;
+    }
+
+    @Override
+    protected void writeBatch(Map<String, ChestRecord> batch) throws SQLException, IOException {
+        Connection connection = connection();
+
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement delete = connection.prepareStatement(DELETE)) {
+            for (Map.Entry<String, ChestRecord> entry : batch.entrySet()) {
+                ChestRecord record = entry.getValue();
+
+                if (record == null) {
+                    delete.setString(1, entry.getKey());
+                    delete.addBatch();
+                    continue;
+                }
+
+                upsert.setString(1, entry.getKey());
+                upsert.setString(2, record.world());
+                upsert.setInt(3, record.x());
+                upsert.setInt(4, record.y());
+                upsert.setInt(5, record.z());
+                upsert.setString(6, record.owner().toString());
+                upsert.setString(7, record.ownerName());
+                upsert.setLong(8, record.creationTime());
+                upsert.setString(9, record.hologramId());
+                upsert.setBytes(10, ItemCodec.encoded(record.contents()));
+                upsert.addBatch();
+            }
+
+            upsert.executeBatch();
+            delete.executeBatch();
+            connection.commit();
+        } catch (SQLException | IOException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void closeResources() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warning("Не удалось закрыть базу сундуков смерти: " + e.getMessage());
+        }
+        connection = null;
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection != null && !connection.isClosed()) {
+            return connection;
+        }
+
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists() && !folder.mkdirs()) {
+            throw new SQLException("не удалось создать папку " + folder);
+        }
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute(CREATE_TABLE);
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+}
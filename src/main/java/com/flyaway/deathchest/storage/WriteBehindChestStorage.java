@@ -0,0 +1,204 @@
+package com.flyaway.deathchest.storage;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Общая часть хранилищ с отложенной записью.
+ * Основной поток только кладёт снимки в очередь, повторные сохранения одного
+ * сундука схлопываются, а запись пачки изменений выполняется в фоновом потоке.
+ */
+abstract class WriteBehindChestStorage implements ChestStorage {
+
+    private static final long FLUSH_DELAY_MS = 1000L;
+
+    protected final Logger logger;
+    private final ScheduledThreadPoolExecutor executor;
+    // null в качестве значения означает удаление сундука
+    private final Map<String, ChestRecord> pending = new HashMap<>();
+    private boolean flushScheduled;
+
+    protected WriteBehindChestStorage(Logger logger) {
+        this.logger = logger;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "DeathChest-Storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Читает все сундуки без содержимого. Вызывается, когда поток записи простаивает.
+     */
+    protected abstract List<ChestRecord> readAll() throws Exception;
+
+    /**
+     * Читает записанное содержимое сундука или null, если его нет. Вызывается в потоке записи.
+     */
+    protected abstract byte[] readContents(String key) throws Exception;
+
+    /**
+     * Записывает пачку изменений в потоке записи. null в качестве значения означает удаление.
+     */
+    protected abstract void writeBatch(Map<String, ChestRecord> batch) throws Exception;
+
+    /**
+     * Освобождает файлы и соединения после записи последней пачки
+     */
+    protected void closeResources() {
+    }
+
+    @Override
+    public List<ChestRecord> load() {
+        flush();
+
+        synchronized (this) {
+            try {
+                return readAll();
+            } catch (Exception e) {
+                logger.severe("Не удалось прочитать сундуки смерти: " + e.getMessage());
+                return new ArrayList<>();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, byte[]>> loadContents(Collection<String> keys) {
+        List<String> requested = List.copyOf(keys);
+        if (executor.isShutdown()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("хранилище закрыто"));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> collectContents(requested), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Пачка, которую пишет поток записи, уже записана: чтение ждёт её на блокировке this.
+     * Ещё не записанные изменения (в том числе вернувшиеся после ошибки) берутся из очереди.
+     */
+    private synchronized Map<String, byte[]> collectContents(List<String> keys) {
+        Map<String, byte[]> result = new HashMap<>();
+        for (String key : keys) {
+            synchronized (pending) {
+                if (pending.containsKey(key)) {
+                    ChestRecord record = pending.get(key);
+                    if (record != null) {
+                        result.put(key, record.contents());
+                    }
+                    continue;
+                }
+            }
+            try {
+                byte[] contents = readContents(key);
+                if (contents != null) {
+                    result.put(key, contents);
+                }
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(ChestRecord record) {
+        enqueue(record.key(), record);
+    }
+
+    @Override
+    public void remove(String key) {
+        enqueue(key, null);
+    }
+
+    private void enqueue(String key, ChestRecord record) {
+        synchronized (pending) {
+            pending.put(key, record);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Вызывается под блокировкой pending
+     */
+    private void scheduleFlush() {
+        if (!flushScheduled && !executor.isShutdown()) {
+            flushScheduled = true;
+            executor.schedule(this::writePending, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (executor.isShutdown()) {
+            writePending();
+            return;
+        }
+
+        try {
+            executor.submit(this::writePending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.severe("Не удалось сохранить сундуки смерти: " + e.getCause().getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Поток сохранения сундуков смерти не завершился вовремя");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writePending();
+
+        synchronized (this) {
+            closeResources();
+        }
+    }
+
+    private synchronized void writePending() {
+        Map<String, ChestRecord> batch;
+        synchronized (pending) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = new HashMap<>(pending);
+            pending.clear();
+        }
+
+        try {
+            writeBatch(batch);
+        } catch (Exception e) {
+            logger.severe("Не удалось сохранить сундуки смерти, повтор при следующей записи: " + e.getMessage());
+            requeue(batch);
+        }
+    }
+
+    /**
+     * Возвращает неудавшуюся пачку в очередь. Изменения, поставленные после неё, новее и не перезаписываются.
+     */
+    private void requeue(Map<String, ChestRecord> batch) {
+        synchronized (pending) {
+            // containsKey, а не putIfAbsent: удаление хранится как null и тоже считается более новым изменением
+            batch.forEach((key, record) -> {
+                if (!pending.containsKey(key)) {
+                    pending.put(key, record);
+                }
+            });
+            scheduleFlush();
+        }
+    }
+}
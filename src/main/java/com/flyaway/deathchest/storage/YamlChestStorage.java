@@ -0,0 +1,108 @@
+package com.flyaway.deathchest.storage;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Хранилище сундуков в chests.yml. Разобранный файл держится в памяти,
+ * поэтому запись не требует повторного чтения, но каждый раз переписывает файл целиком.
+ */
+public class YamlChestStorage extends WriteBehindChestStorage {
+
+    private final File file;
+    // Меняется только в потоке записи (или при загрузке, когда поток простаивает)
+    private YamlConfiguration data = new YamlConfiguration();
+
+    public YamlChestStorage(File file, Logger logger) {
+        super(logger);
+        this.file = file;
+    }
+
+    @Override
+    protected List<ChestRecord> readAll() {
+        data = file.exists() ? YamlConfiguration.loadConfiguration(file) : new YamlConfiguration();
+        List<ChestRecord> records = new ArrayList<>();
+
+        for (String key : data.getKeys(false)) {
+            try {
+                String[] parts = key.split(";");
+                if (parts.length != 4) continue;
+
+                if (!data.isList(key + ".items")) continue;
+
+                records.add(new ChestRecord(
+                        parts[0],
+                        Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3]),
+                        UUID.fromString(data.getString(key + ".owner")),
+                        data.getString(key + ".ownerName"),
+                        data.getLong(key + ".creationTime"),
+                        data.getString(key + ".hologramId", null),
+                        null
+                ));
+            } catch (Exception e) {
+                logger.warning("Ошибка при загрузке сундука смерти: " + key + " - " + e.getMessage());
+            }
+        }
+
+        return records;
+    }
+
+    @Override
+    protected byte[] readContents(String key) throws IOException {
+        List<?> items = data.getList(key + ".items");
+        if (items == null) return null;
+
+        ItemStack[] contents = new ItemStack[items.size()];
+        for (int i = 0; i < contents.length; i++) {
+            if (items.get(i) instanceof ItemStack item) {
+                contents[i] = item;
+            }
+        }
+        return ItemCodec.encode(contents);
+    }
+
+    @Override
+    protected void writeBatch(Map<String, ChestRecord> batch) throws IOException {
+        for (Map.Entry<String, ChestRecord> entry : batch.entrySet()) {
+            String key = entry.getKey();
+            ChestRecord record = entry.getValue();
+
+            if (record == null) {
+                data.set(key, null);
+                continue;
+            }
+
+            data.set(key + ".owner", record.owner().toString());
+            data.set(key + ".ownerName", record.ownerName());
+            data.set(key + ".creationTime", record.creationTime());
+            data.set(key + ".items", Arrays.stream(ItemCodec.unpack(record.contents())).filter(Objects::nonNull).toList());
+            data.set(key + ".hologramId", record.hologramId());
+        }
+
+        writeAtomically(data.saveToString());
+    }
+
+    private void writeAtomically(String content) throws IOException {
+        Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}